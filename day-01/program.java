@@ -1,50 +1,125 @@
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.util.function.*;
-import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
 public class program {
   public static void main(String... args) throws java.io.IOException {
-    var input = Files.readString(Path.of("../input/day01.txt"));
-    IntUnaryOperator upOrDown = i -> i == '(' ? 1 : -1;
-    var allChanges = input.chars().map(upOrDown).boxed().collect(Collectors.toList());
+    var floors = trackFloors(Path.of("../input/day01.txt"));
     System.out.println("Part 1:");
-    System.out.println(allChanges.stream().collect(Collectors.summingInt(i -> i)));
-
+    System.out.println(floors.floor);
     System.out.println("Part 2:");
- 
-    var result = 
-      allChanges.stream().reduce(
-        new Tuple<>(new ArrayList<Integer>(), 0), 
-        (acc, next) -> {
-          var currentFloor = acc.two + next;
-          var newList = new ArrayList<Integer>(acc.one);
-          newList.add(currentFloor);
-          return Tuple.of(newList, currentFloor);
-        },
-        (a, b) -> b
-      );
-    System.out.println(result.one.stream().takeWhile(i -> i != -1).count() + 1);
-
-    var sum = 0;
-    for(int i: allChanges) {
-      sum += i;
+    System.out.println(floors.firstBasement);
+
+    System.out.println("Part 2 (parallel):");
+    System.out.println(PrefixScan.firstAtOrBelow(Path.of("../input/day01.txt"), program::step, -1));
+  }
+
+  record Floors(long floor, long firstBasement) { }
+
+  /* Reads the instructions through a single reusable buffer, so the heap use does not depend on
+     the size of the input. Until the basement has been found, every byte has to be looked at in
+     order; after that, only the number of '(' and ')' matters, and those are counted a long (8
+     bytes) at a time. */
+  static Floors trackFloors(Path path) throws java.io.IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var buffer = ByteBuffer.allocateDirect(1 << 16);
+      long floor = 0, position = 0, firstBasement = -1;
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        while (firstBasement < 0 && buffer.hasRemaining()) {
+          floor += step(buffer.get());
+          position += 1;
+          if (floor == -1) { firstBasement = position; }
+        }
+        while (8 <= buffer.remaining()) {
+          var word = buffer.getLong();
+          floor += countBytes(word, '(') - countBytes(word, ')');
+        }
+        while (buffer.hasRemaining()) {
+          floor += step(buffer.get());
+        }
+        buffer.clear();
+      }
+      return new Floors(floor, firstBasement);
     }
-    System.out.println(sum);
-    var steps = 0;
-    sum = 0;
-    for(int i: allChanges) {
-      steps += 1;
-      sum += i;
-      if (sum == -1) { break; }
+  }
+
+  /* Only parentheses move Santa; anything else (such as a trailing newline, which used to count
+     as a step down) is ignored. */
+  static int step(int b) {
+    return b == '(' ? 1 : b == ')' ? -1 : 0;
+  }
+
+  private static final long LOW_SEVEN_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+  /* Counts the bytes in the word that are equal to b: after the xor, the matching bytes are zero,
+     and the expression below sets the high bit of exactly those bytes (without carries between
+     bytes, so the count is exact). */
+  static int countBytes(long word, char b) {
+    var x = word ^ (0x0101010101010101L * b);
+    var t = (x & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+    return Long.bitCount(~(t | x | LOW_SEVEN_BITS));
+  }
+}
+
+/* Finds the first position where the running sum of a per-byte step reaches a threshold, using
+   all cores: every chunk of the file is summarized in parallel (its net delta and the lowest
+   running sum inside it), which is enough to tell which chunk holds the first crossing. Only
+   that chunk is scanned again, byte by byte. */
+class PrefixScan {
+  static final int CHUNK_SIZE = 1 << 24;
+
+  record Summary(long delta, long minPrefix) { }
+
+  /* Returns the 1-based position of the first byte after which the running sum is at or below
+     the threshold, or -1 if it never gets there. */
+  static long firstAtOrBelow(Path path, IntUnaryOperator stepOf, long threshold)
+      throws java.io.IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var size = channel.size();
+      var chunks = (int)((size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+      var summaries = IntStream.range(0, chunks).parallel()
+        .mapToObj(i -> summarize(map(channel, i, size), stepOf))
+        .toArray(Summary[]::new);
+      long sum = 0;
+      for (int i = 0; i < chunks; i += 1) {
+        if (summaries[i].minPrefix <= threshold - sum) {
+          var position = firstInChunk(map(channel, i, size), stepOf, threshold - sum);
+          return (long)i * CHUNK_SIZE + position;
+        }
+        sum += summaries[i].delta;
+      }
+      return -1;
+    }
+  }
+
+  static Summary summarize(ByteBuffer chunk, IntUnaryOperator stepOf) {
+    long sum = 0, min = Long.MAX_VALUE;
+    while (chunk.hasRemaining()) {
+      sum += stepOf.applyAsInt(chunk.get());
+      min = Math.min(min, sum);
+    }
+    return new Summary(sum, min);
+  }
+
+  static long firstInChunk(ByteBuffer chunk, IntUnaryOperator stepOf, long threshold) {
+    long sum = 0;
+    while (chunk.hasRemaining()) {
+      sum += stepOf.applyAsInt(chunk.get());
+      if (sum <= threshold) { return chunk.position(); }
     }
-    System.out.println(steps);
+    return -1;
   }
 
-  record Tuple<S, T>(S one, T two) {
-    public static <S, T> Tuple<S, T> of(S one, T two) {
-      return new Tuple<S, T>(one, two);
+  static ByteBuffer map(FileChannel channel, int chunk, long size) {
+    var start = (long)chunk * CHUNK_SIZE;
+    try {
+      return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+    } catch (java.io.IOException x) {
+      throw new java.io.UncheckedIOException(x);
     }
   }
 }
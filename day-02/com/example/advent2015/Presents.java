@@ -0,0 +1,114 @@
+package com.example.advent2015;
+
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+/* All presents of a manifest, stored column by column: the lengths, widths and heights each
+   live in their own int[], so no object is created per present. */
+class Presents {
+  static final int CHUNK_SIZE = 1 << 16;
+
+  private int[] l, w, h;
+  private int count;
+
+  private Presents(int capacity) {
+    l = new int[capacity];
+    w = new int[capacity];
+    h = new int[capacity];
+  }
+
+  public int count() { return count; }
+
+  /* Parses lines of the form LxWxH straight from the bytes; anything that is not a digit ends
+     the current number, and a newline ends the present, which must have exactly three sides. */
+  public static Presents load(Path path) throws java.io.IOException {
+    var bytes = Files.readAllBytes(path);
+    var presents = new Presents(Math.max(16, bytes.length / 6));
+    var sides = new int[3];
+    int side = 0, value = 0, line = 1;
+    var inNumber = false;
+    for (int i = 0; i <= bytes.length; i += 1) {
+      var b = i < bytes.length ? bytes[i] : '\n';
+      if ('0' <= b && b <= '9') {
+        value = value * 10 + (b - '0');
+        inNumber = true;
+        continue;
+      }
+      if (inNumber) {
+        if (side == 3) { throw badLine(line); }
+        sides[side] = value;
+        side += 1;
+        value = 0;
+        inNumber = false;
+      }
+      if (b == '\n') {
+        if (side == 3) {
+          presents.add(sides[0], sides[1], sides[2]);
+        } else if (side != 0 || i < bytes.length) {
+          throw badLine(line);
+        }
+        side = 0;
+        line += 1;
+      }
+    }
+    return presents;
+  }
+
+  private static IllegalArgumentException badLine(int line) {
+    return new IllegalArgumentException("Line " + line + " does not hold exactly three sides");
+  }
+
+  private void add(int length, int width, int height) {
+    if (count == l.length) {
+      var capacity = count * 2;
+      l = Arrays.copyOf(l, capacity);
+      w = Arrays.copyOf(w, capacity);
+      h = Arrays.copyOf(h, capacity);
+    }
+    l[count] = length;
+    w[count] = width;
+    h[count] = height;
+    count += 1;
+  }
+
+  public long requiredPaper() { return requiredPaper(0, count); }
+
+  public long requiredRibbon() { return requiredRibbon(0, count); }
+
+  /* The smallest and middle side are found with min/max only (which compile to conditional
+     moves), so the loops have no data-dependent branches. */
+  long requiredPaper(int from, int to) {
+    long total = 0;
+    for (int i = from; i < to; i += 1) {
+      int a = l[i], b = w[i], c = h[i];
+      int min = Math.min(a, Math.min(b, c)), max = Math.max(a, Math.max(b, c));
+      int mid = a + b + c - min - max;
+      total += 2L*a*b + 2L*b*c + 2L*c*a + (long)min*mid;
+    }
+    return total;
+  }
+
+  long requiredRibbon(int from, int to) {
+    long total = 0;
+    for (int i = from; i < to; i += 1) {
+      int a = l[i], b = w[i], c = h[i];
+      int max = Math.max(a, Math.max(b, c));
+      total += (long)a*b*c + 2L*((long)a + b + c - max);
+    }
+    return total;
+  }
+
+  public long requiredPaperParallel() {
+    return chunks().mapToLong(i -> requiredPaper(i, Math.min(count, i + CHUNK_SIZE))).sum();
+  }
+
+  public long requiredRibbonParallel() {
+    return chunks().mapToLong(i -> requiredRibbon(i, Math.min(count, i + CHUNK_SIZE))).sum();
+  }
+
+  private IntStream chunks() {
+    var chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    return IntStream.range(0, chunks).parallel().map(c -> c * CHUNK_SIZE);
+  }
+}
@@ -6,73 +6,217 @@ import static java.util.stream.Collectors.*;
 import static java.lang.Math.*;
 
 public class Program {
-  record Coord(int x, int y) {
-    public static Coord zero() { return new Coord(0, 0); }
-    public static Coord add(Coord one, Coord other) {
-      return new Coord(one.x + other.x, one.y + other.y);
-    }
-    public Coord add(Coord other) {
-      return add(this, other);
-    }
-  }
-
-  private static Map<Character, Coord> directionMap = Map.of(
-    '<', new Coord(-1, 0),
-    '>', new Coord(1, 0),
-    '^', new Coord(0, -1), 
-    'v', new Coord(0, 1)
-  );
-
-  record Tuple<T, U>(T fst, U snd) { }
-
   public static void main(String... args) throws java.io.IOException {
     var input = Files.readString(Path.of("../input/day03.txt"));
     System.out.println("Part 1:");
-    System.out.println(allVisits(input.chars().mapToObj(c -> (char)c)).size());
+    System.out.println(allVisits(input, 0, 1, VisitSet.onHeap()).size());
     System.out.println("Part 2:");
-    var pairs = getPairs(input);
-    HashSet<Coord> santaVisits = allVisits(pairs.fst.stream()),
-      robotVisits = allVisits(pairs.snd.stream());
+    var santaVisits = allVisits(input, 0, 2, VisitSet.onHeap());
+    var robotVisits = allVisits(input, 1, 2, VisitSet.onHeap());
     santaVisits.addAll(robotVisits);
     System.out.println(santaVisits.size());
+
+    System.out.println("Part 2 (off-heap):");
+    var visits = allVisits(input, 0, 2, VisitSet.offHeap());
+    allVisits(input, 1, 2, visits);
+    System.out.println(visits.size());
+
+    System.out.println("Part 2 (agents):");
+    System.out.println(deliver(input, 2).distinctHouses);
+  }
+
+  record Delivery(int distinctHouses, int[] housesPerAgent) { }
+
+  /* Lets a fleet of agents deliver, where agent i follows every agents-th instruction starting
+     at i. Each agent walks the shared input on its own thread into its own set; the sets are
+     then merged pairwise in parallel. */
+  static Delivery deliver(CharSequence instructions, int agents) {
+    var visits = IntStream.range(0, agents).parallel()
+      .mapToObj(i -> allVisits(instructions, i, agents, VisitSet.onHeap()))
+      .collect(toList());
+    var housesPerAgent = visits.stream().mapToInt(VisitSet::size).toArray();
+    var all = visits.parallelStream().reduce(VisitSet::union).orElseThrow();
+    return new Delivery(all.size(), housesPerAgent);
   }
 
-  private static HashSet<Coord> allVisits(Stream<Character> instructions) {
-    return foldLeft(
-      instructions.map(c -> directionMap.get(c)),
-      new Tuple<>(Coord.zero(), new HashSet<Coord>()),
-      (acc, next) -> {
-        var newPos = acc.fst.add(next);
-        acc.snd.add(newPos);
-        return new Tuple<>(newPos, acc.snd);
+  /* Follows every stride-th instruction, starting at the given offset, and records each house
+     visited (including the starting one) in the given set. */
+  static VisitSet allVisits(CharSequence instructions, int offset, int stride, VisitSet visits) {
+    int x = 0, y = 0;
+    visits.add(VisitSet.pack(x, y));
+    for (int i = offset; i < instructions.length(); i += stride) {
+      switch (instructions.charAt(i)) {
+        case '<' -> x -= 1;
+        case '>' -> x += 1;
+        case '^' -> y -= 1;
+        case 'v' -> y += 1;
+        default -> { continue; }
       }
-    ).snd;
+      visits.add(VisitSet.pack(x, y));
+    }
+    return visits;
   }
 
-  private static Tuple<List<Character>, List<Character>> getPairs(String s) {
-    ArrayList<Character> left = new ArrayList<>(), right = new ArrayList<>();
-    var iterator = s.chars().mapToObj(c -> (char)c).iterator();
-    while(iterator.hasNext()) {
-      left.add(iterator.next());
-      if (iterator.hasNext()) {
-        right.add(iterator.next());
+  /* A set of coordinates packed into longs, using open addressing with linear probing. When the
+     table gets half full, a table twice the size is allocated and every add moves a few slots
+     of the old table over, so there is never a pause to rehash everything at once. Until the
+     move is complete, lookups check both tables. */
+  static class VisitSet {
+    static final long EMPTY = Long.MIN_VALUE;
+    static final int MIGRATE_STEP = 8;
+
+    interface Slots {
+      long get(int i);
+      void set(int i, long value);
+      int length();
+    }
+
+    private final IntFunction<Slots> allocate;
+    private Slots table, old;
+    private int migrated, size;
+    private boolean hasEmptyKey;
+
+    private VisitSet(IntFunction<Slots> allocate) {
+      this.allocate = allocate;
+      table = allocate.apply(16);
+    }
+
+    static VisitSet onHeap() {
+      return new VisitSet(n -> {
+        var slots = new long[n];
+        Arrays.fill(slots, EMPTY);
+        return new Slots() {
+          public long get(int i) { return slots[i]; }
+          public void set(int i, long value) { slots[i] = value; }
+          public int length() { return slots.length; }
+        };
+      });
+    }
+
+    /* Keeps the tables outside of the Java heap, in direct buffers. */
+    static VisitSet offHeap() {
+      return new VisitSet(n -> {
+        var slots = java.nio.ByteBuffer.allocateDirect(n * Long.BYTES).asLongBuffer();
+        for (int i = 0; i < n; i += 1) { slots.put(i, EMPTY); }
+        return new Slots() {
+          public long get(int i) { return slots.get(i); }
+          public void set(int i, long value) { slots.put(i, value); }
+          public int length() { return n; }
+        };
+      });
+    }
+
+    static long pack(int x, int y) { return ((long)x << 32) | (y & 0xffffffffL); }
+
+    public int size() { return size; }
+
+    public boolean add(long key) {
+      if (key == EMPTY) {
+        if (hasEmptyKey) { return false; }
+        hasEmptyKey = true;
+        size += 1;
+        return true;
+      }
+      if (old != null) { migrate(); }
+      if (old != null && indexOf(old, key) >= 0) { return false; }
+      if (!insert(table, key)) { return false; }
+      size += 1;
+      if (old == null && table.length() < 2 * size) {
+        old = table;
+        table = allocate.apply(old.length() * 2);
+        migrated = 0;
+      }
+      return true;
+    }
+
+    public boolean contains(long key) {
+      if (key == EMPTY) { return hasEmptyKey; }
+      return indexOf(table, key) >= 0 || (old != null && indexOf(old, key) >= 0);
+    }
+
+    public void addAll(VisitSet other) {
+      other.forEach(this::add);
+    }
+
+    /* Adds the smaller set to the larger one, and returns the larger one. */
+    static VisitSet union(VisitSet one, VisitSet other) {
+      if (one.size < other.size) { return union(other, one); }
+      one.addAll(other);
+      return one;
+    }
+
+    public void forEach(LongConsumer action) {
+      while (old != null) { migrate(); }
+      if (hasEmptyKey) { action.accept(EMPTY); }
+      for (int i = 0; i < table.length(); i += 1) {
+        var key = table.get(i);
+        if (key != EMPTY) { action.accept(key); }
+      }
+    }
+
+    private void migrate() {
+      var end = Math.min(old.length(), migrated + MIGRATE_STEP);
+      for (; migrated < end; migrated += 1) {
+        var key = old.get(migrated);
+        if (key != EMPTY) { insert(table, key); }
       }
+      if (migrated == old.length()) { old = null; }
+    }
+
+    private static int indexOf(Slots slots, long key) {
+      var mask = slots.length() - 1;
+      for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+        var current = slots.get(i);
+        if (current == key) { return i; }
+        if (current == EMPTY) { return -1; }
+      }
+    }
+
+    private static boolean insert(Slots slots, long key) {
+      var mask = slots.length() - 1;
+      for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+        var current = slots.get(i);
+        if (current == key) { return false; }
+        if (current == EMPTY) {
+          slots.set(i, key);
+          return true;
+        }
+      }
+    }
+
+    private static int hash(long key) {
+      var h = key * 0x9e3779b97f4a7c15L;
+      return (int)(h ^ (h >>> 32));
     }
-    return new Tuple<>(left, right);
   }
 
   private static void testIt() {
     System.out.println(foldLeft(Stream.of(1,2,3,4), "0", (s, i) -> s + i.toString()));
     scanLeft(Stream.of(1,2,3,4), "0", (s, i) -> s + i.toString()).forEach(s -> System.out.println(s));
+    System.out.println(foldLeftInt(IntStream.of(1,2,3,4), 0, (a, i) -> a * 10 + i));
+    scanLeftInt(IntStream.of(1,2,3,4), 0, Integer::sum).forEach(i -> System.out.println(i));
+    scanAssociative(IntStream.rangeClosed(1, 4).parallel(), Integer::sum).forEach(i -> System.out.println(i));
   }
 
+  /* The folds go through forEachOrdered rather than an iterator: the accumulator still sees the
+     elements one at a time and in order, but the stages before it keep running in parallel if
+     the stream is parallel. */
   public static <T, U> U foldLeft(Stream<T> stream, U seed, BiFunction<U, ? super T, U> accumulator) {
-    var acc = seed;
-    var iterator = stream.iterator();
-    while(iterator.hasNext()) {
-      acc = accumulator.apply(acc, iterator.next());
-    }
-    return acc;
+    var fold = new Object() { U acc = seed; };
+    stream.forEachOrdered(t -> fold.acc = accumulator.apply(fold.acc, t));
+    return fold.acc;
+  }
+
+  public static int foldLeftInt(IntStream stream, int seed, IntBinaryOperator accumulator) {
+    var fold = new Object() { int acc = seed; };
+    stream.forEachOrdered(i -> fold.acc = accumulator.applyAsInt(fold.acc, i));
+    return fold.acc;
+  }
+
+  public static long foldLeftLong(LongStream stream, long seed, LongBinaryOperator accumulator) {
+    var fold = new Object() { long acc = seed; };
+    stream.forEachOrdered(l -> fold.acc = accumulator.applyAsLong(fold.acc, l));
+    return fold.acc;
   }
 
   /*
@@ -88,20 +232,8 @@ public class Program {
   */
 
   public static <T, U> Stream<U> scanLeft(Stream<T> stream, U seed, BiFunction<U, ? super T, U> accumulator) {
-    var scanningIterator = new Iterator<U>() {
-      Supplier<U> nextSupplier = () -> seed;
-      BooleanSupplier hasNextSupplier = () -> true;
-      Iterator<T> inner = stream.iterator();
-      public boolean hasNext() { return this.hasNextSupplier.getAsBoolean(); }
-      public U next() { 
-        var result = nextSupplier.get();
-        hasNextSupplier = () -> inner.hasNext();
-        nextSupplier = () -> accumulator.apply(result, inner.next());
-        return result;
-      }
-    };
-    Iterable<U> scanningIterable = () -> scanningIterator;
-    return StreamSupport.stream(scanningIterable.spliterator(), false);
+    return StreamSupport.stream(new ScanSpliterator<>(stream.spliterator(), seed, accumulator), false)
+      .onClose(stream::close);
   }
   // example usage:
   // scanLeft(Stream.of(1,2,3,4), "0", (s, i) -> s + i.toString()).forEach(s -> System.out.println(s));
@@ -112,4 +244,106 @@ public class Program {
   // 0123
   // 01234
 
-}
\ No newline at end of file
+  public static IntStream scanLeftInt(IntStream stream, int seed, IntBinaryOperator accumulator) {
+    return StreamSupport.intStream(new ScanIntSpliterator(stream.spliterator(), seed, accumulator), false)
+      .onClose(stream::close);
+  }
+
+  public static LongStream scanLeftLong(LongStream stream, long seed, LongBinaryOperator accumulator) {
+    return StreamSupport.longStream(new ScanLongSpliterator(stream.spliterator(), seed, accumulator), false)
+      .onClose(stream::close);
+  }
+
+  /* When the operator is associative, the running values do not have to be computed strictly
+     left to right: Arrays.parallelPrefix does a two-pass prefix scan on the fork/join pool. Unlike
+     scanLeft, there is no seed; the first element is the first element of the input. */
+  public static IntStream scanAssociative(IntStream stream, IntBinaryOperator operator) {
+    var values = stream.toArray();
+    Arrays.parallelPrefix(values, operator);
+    return Arrays.stream(values);
+  }
+
+  public static LongStream scanAssociative(LongStream stream, LongBinaryOperator operator) {
+    var values = stream.toArray();
+    Arrays.parallelPrefix(values, operator);
+    return Arrays.stream(values);
+  }
+
+  /* Yields the seed, then the running value after each element of the source. The spliterator
+     is its own consumer for the source, so advancing does not allocate. The inherited trySplit
+     hands out batches of already computed values, so stages after the scan can run in
+     parallel. */
+  static class ScanSpliterator<T, U> extends Spliterators.AbstractSpliterator<U> implements Consumer<T> {
+    private final Spliterator<T> source;
+    private final BiFunction<U, ? super T, U> accumulator;
+    private U current;
+    private boolean seedSent;
+
+    ScanSpliterator(Spliterator<T> source, U seed, BiFunction<U, ? super T, U> accumulator) {
+      super(sizeWithSeed(source), source.characteristics() & (ORDERED | SIZED));
+      this.source = source;
+      this.accumulator = accumulator;
+      current = seed;
+    }
+
+    public void accept(T t) { current = accumulator.apply(current, t); }
+
+    public boolean tryAdvance(Consumer<? super U> action) {
+      if (seedSent && !source.tryAdvance(this)) { return false; }
+      seedSent = true;
+      action.accept(current);
+      return true;
+    }
+  }
+
+  static class ScanIntSpliterator extends Spliterators.AbstractIntSpliterator implements IntConsumer {
+    private final Spliterator.OfInt source;
+    private final IntBinaryOperator accumulator;
+    private int current;
+    private boolean seedSent;
+
+    ScanIntSpliterator(Spliterator.OfInt source, int seed, IntBinaryOperator accumulator) {
+      super(sizeWithSeed(source), source.characteristics() & (ORDERED | SIZED));
+      this.source = source;
+      this.accumulator = accumulator;
+      current = seed;
+    }
+
+    public void accept(int i) { current = accumulator.applyAsInt(current, i); }
+
+    public boolean tryAdvance(IntConsumer action) {
+      if (seedSent && !source.tryAdvance(this)) { return false; }
+      seedSent = true;
+      action.accept(current);
+      return true;
+    }
+  }
+
+  static class ScanLongSpliterator extends Spliterators.AbstractLongSpliterator implements LongConsumer {
+    private final Spliterator.OfLong source;
+    private final LongBinaryOperator accumulator;
+    private long current;
+    private boolean seedSent;
+
+    ScanLongSpliterator(Spliterator.OfLong source, long seed, LongBinaryOperator accumulator) {
+      super(sizeWithSeed(source), source.characteristics() & (ORDERED | SIZED));
+      this.source = source;
+      this.accumulator = accumulator;
+      current = seed;
+    }
+
+    public void accept(long l) { current = accumulator.applyAsLong(current, l); }
+
+    public boolean tryAdvance(LongConsumer action) {
+      if (seedSent && !source.tryAdvance(this)) { return false; }
+      seedSent = true;
+      action.accept(current);
+      return true;
+    }
+  }
+
+  static long sizeWithSeed(Spliterator<?> source) {
+    var size = source.estimateSize();
+    return size == Long.MAX_VALUE ? size : size + 1;
+  }
+}
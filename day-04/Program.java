@@ -1,6 +1,7 @@
 import java.security.MessageDigest;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.util.stream.*;
 import java.util.function.*;
 import java.lang.StringBuilder;
@@ -17,6 +18,21 @@ public class Program {
     System.out.println("Part 2:");
     var part2 = findPrefix(secret, "000000", part1.fst + 1);
     System.out.println(part2.fst);
+
+    System.out.println("Part 1 (parallel):");
+    var parallel1 = mineParallel(secret, 5, 0);
+    System.out.println(parallel1.nonce);
+    System.out.println("Part 2 (parallel):");
+    var parallel2 = mineParallel(secret, 6, parallel1.nonce + 1);
+    System.out.println(parallel2.nonce);
+    System.out.printf("(%.0f hashes/s)%n", parallel2.hashesPerSecond);
+
+    System.out.println("Parts 1 and 2 (single pass):");
+    mineMilestones(secret, 6, m -> {
+      if (5 <= m.zeroNibbles) { System.out.println(m.nonce); }
+    });
+
+    if (0 < args.length && args[0].equals("benchmark")) { benchmark(secret); }
   }
 
   private static Tuple<Integer, String> findPrefix(String salt, String desiredPrefix, int startAt) {
@@ -39,4 +55,305 @@ public class Program {
   }
 
   record Tuple<T, U>(T fst, U snd) { }
-}
\ No newline at end of file
+
+  record MiningResult(long nonce, long hashes, double hashesPerSecond) { }
+
+  static final int BLOCK_SIZE = 1 << 14;
+
+  /* Every worker repeatedly claims the next block of nonces from a shared counter, so fast
+     workers simply take more blocks. Blocks are handed out in increasing order, so once a hit
+     is found, only blocks starting below it still need to be searched; that makes the result
+     the smallest qualifying nonce, regardless of timing. */
+  static MiningResult mineParallel(String salt, int zeroNibbles, long startAt) {
+    var nextBlock = new AtomicLong(startAt);
+    var best = new AtomicLong(Long.MAX_VALUE);
+    var hashes = new LongAdder();
+    var started = System.nanoTime();
+    IntStream.range(0, Runtime.getRuntime().availableProcessors()).parallel().forEach(worker -> {
+      var md = md5();
+      var saltBytes = salt.getBytes();
+      var message = Arrays.copyOf(saltBytes, saltBytes.length + 20);
+      var hash = new byte[16];
+      for (var from = nextBlock.getAndAdd(BLOCK_SIZE); from < best.get(); from = nextBlock.getAndAdd(BLOCK_SIZE)) {
+        var to = Math.min(from + BLOCK_SIZE, best.get());
+        var nonce = from;
+        for (; nonce < to; nonce += 1) {
+          var length = writeDecimal(nonce, message, saltBytes.length);
+          md.update(message, 0, length);
+          digest(md, hash);
+          if (zeroNibbles <= leadingZeroNibbles(hash)) {
+            best.accumulateAndGet(nonce, Math::min);
+            nonce += 1;
+            break;
+          }
+        }
+        hashes.add(nonce - from);
+      }
+    });
+    var seconds = (System.nanoTime() - started) / 1e9;
+    return new MiningResult(best.get(), hashes.sum(), hashes.sum() / seconds);
+  }
+
+  record Milestone(int zeroNibbles, long nonce) { }
+
+  /* Mines once for every difficulty up to maxZeroNibbles: the first hash with n leading zeroes
+     is also the first one for each difficulty up to n that has not been reached yet. Every
+     milestone is passed on as soon as it is found, in order of difficulty. */
+  static void mineMilestones(String salt, int maxZeroNibbles, Consumer<Milestone> onFound) {
+    var md = md5();
+    var saltBytes = salt.getBytes();
+    var message = Arrays.copyOf(saltBytes, saltBytes.length + 20);
+    var hash = new byte[16];
+    var reached = 0;
+    for (long nonce = 0; reached < maxZeroNibbles; nonce += 1) {
+      var length = writeDecimal(nonce, message, saltBytes.length);
+      md.update(message, 0, length);
+      digest(md, hash);
+      var zeroNibbles = Math.min(maxZeroNibbles, leadingZeroNibbles(hash));
+      for (; reached < zeroNibbles; reached += 1) {
+        onFound.accept(new Milestone(reached + 1, nonce));
+      }
+    }
+  }
+
+  /* Writes the decimal digits of value into the buffer at offset; returns the end offset. */
+  static int writeDecimal(long value, byte[] buffer, int offset) {
+    var digits = 1;
+    for (var rest = value / 10; rest != 0; rest /= 10) { digits += 1; }
+    for (int i = offset + digits - 1; offset <= i; i -= 1) {
+      buffer[i] = (byte)('0' + value % 10);
+      value /= 10;
+    }
+    return offset + digits;
+  }
+
+  static int leadingZeroNibbles(byte[] hash) {
+    var count = 0;
+    for (var b: hash) {
+      if (b != 0) { return (b & 0xf0) == 0 ? count + 1 : count; }
+      count += 2;
+    }
+    return count;
+  }
+
+  static MessageDigest md5() {
+    try { return MessageDigest.getInstance("MD5"); }
+    catch (java.security.NoSuchAlgorithmException x) { throw new IllegalStateException(x); }
+  }
+
+  static void digest(MessageDigest md, byte[] hash) {
+    try { md.digest(hash, 0, hash.length); }
+    catch (java.security.DigestException x) { throw new IllegalStateException(x); }
+  }
+
+  /* Times the reused-buffer MessageDigest loop (as in mineParallel, on one thread) against
+     Md5Miner, searching for the first nonce of a few difficulties. Both are run once on the
+     easiest difficulty first, untimed, so that the JIT has compiled them. Run with
+     `java Program benchmark`. */
+  static void benchmark(String salt) {
+    digestSearch(salt, 5);
+    minerSearch(salt, 5);
+    for (var zeroNibbles: new int[] { 5, 6, 7 }) {
+      var started = System.nanoTime();
+      var nonce = digestSearch(salt, zeroNibbles);
+      var digestSeconds = (System.nanoTime() - started) / 1e9;
+
+      started = System.nanoTime();
+      minerSearch(salt, zeroNibbles);
+      var minerSeconds = (System.nanoTime() - started) / 1e9;
+
+      System.out.printf(
+        "%d zeroes: nonce %d, MessageDigest %.2fs (%.0f hashes/s), Md5Miner %.2fs (%.0f hashes/s)%n",
+        zeroNibbles, nonce, digestSeconds, (nonce + 1) / digestSeconds,
+        minerSeconds, (nonce + 1) / minerSeconds
+      );
+    }
+  }
+
+  static long digestSearch(String salt, int zeroNibbles) {
+    var md = md5();
+    var saltBytes = salt.getBytes();
+    var message = Arrays.copyOf(saltBytes, saltBytes.length + 20);
+    var hash = new byte[16];
+    for (long nonce = 0; ; nonce += 1) {
+      md.update(message, 0, writeDecimal(nonce, message, saltBytes.length));
+      digest(md, hash);
+      if (zeroNibbles <= leadingZeroNibbles(hash)) { return nonce; }
+    }
+  }
+
+  static long minerSearch(String salt, int zeroNibbles) {
+    var miner = new Md5Miner(salt);
+    while (miner.zeroNibbles() < zeroNibbles) { miner.increment(); }
+    return miner.nonce();
+  }
+
+  /* MD5 specialized for hashing salt + nonce for consecutive nonces. The salt's full 64-byte
+     blocks are compressed once, and the resulting state is reused for every nonce; only the
+     last block(s) are hashed per nonce. The nonce is kept as ASCII digits and incremented in
+     place, and the result is checked on the state words directly, without producing bytes or
+     hex. */
+  static class Md5Miner {
+    private final int[] midstate = { 0x67452301, 0xefcdab89, 0x98badcfe, 0x10325476 };
+    private final int[] state = new int[4];
+    private final int[] words = new int[16];
+    private final byte[] tail = new byte[128];
+    private final int saltLength, tailStart;
+    private int digits;
+    private long nonce;
+
+    Md5Miner(String salt) {
+      var saltBytes = salt.getBytes();
+      saltLength = saltBytes.length;
+      tailStart = saltLength % 64;
+      for (int block = 0; block + 64 <= saltLength; block += 64) {
+        toWords(saltBytes, block);
+        compress(midstate, words);
+      }
+      System.arraycopy(saltBytes, saltLength - tailStart, tail, 0, tailStart);
+      seek(0);
+    }
+
+    long nonce() { return nonce; }
+
+    void seek(long value) {
+      nonce = value;
+      digits = 1;
+      for (var rest = value / 10; rest != 0; rest /= 10) { digits += 1; }
+      for (int i = tailStart + digits - 1; tailStart <= i; i -= 1) {
+        tail[i] = (byte)('0' + value % 10);
+        value /= 10;
+      }
+    }
+
+    void increment() {
+      nonce += 1;
+      var i = tailStart + digits - 1;
+      for (; tailStart <= i && tail[i] == '9'; i -= 1) { tail[i] = '0'; }
+      if (tailStart <= i) {
+        tail[i] += 1;
+      } else {
+        seek(nonce);
+      }
+    }
+
+    /* Hashes the current nonce and returns the number of leading zero hex digits. */
+    int zeroNibbles() {
+      var end = tailStart + digits;
+      var blocks = end + 9 <= 64 ? 1 : 2;
+      tail[end] = (byte)0x80;
+      Arrays.fill(tail, end + 1, blocks * 64, (byte)0);
+      var bits = (long)(saltLength + digits) * 8;
+      for (int i = 0; i < 8; i += 1) { tail[blocks * 64 - 8 + i] = (byte)(bits >>> (8 * i)); }
+
+      System.arraycopy(midstate, 0, state, 0, 4);
+      for (int block = 0; block < blocks; block += 1) {
+        toWords(tail, block * 64);
+        compress(state, words);
+      }
+      var count = 0;
+      for (var word: state) {
+        var zeroes = Integer.numberOfLeadingZeros(Integer.reverseBytes(word)) / 4;
+        count += zeroes;
+        if (zeroes < 8) { break; }
+      }
+      return count;
+    }
+
+    private void toWords(byte[] bytes, int offset) {
+      for (int i = 0; i < 16; i += 1) {
+        var at = offset + 4 * i;
+        words[i] = (bytes[at] & 0xff) | (bytes[at + 1] & 0xff) << 8
+          | (bytes[at + 2] & 0xff) << 16 | (bytes[at + 3] & 0xff) << 24;
+      }
+    }
+
+    private static void compress(int[] state, int[] x) {
+      int a = state[0], b = state[1], c = state[2], d = state[3];
+      a = ff(a, b, c, d, x[0], 7, 0xd76aa478);
+      d = ff(d, a, b, c, x[1], 12, 0xe8c7b756);
+      c = ff(c, d, a, b, x[2], 17, 0x242070db);
+      b = ff(b, c, d, a, x[3], 22, 0xc1bdceee);
+      a = ff(a, b, c, d, x[4], 7, 0xf57c0faf);
+      d = ff(d, a, b, c, x[5], 12, 0x4787c62a);
+      c = ff(c, d, a, b, x[6], 17, 0xa8304613);
+      b = ff(b, c, d, a, x[7], 22, 0xfd469501);
+      a = ff(a, b, c, d, x[8], 7, 0x698098d8);
+      d = ff(d, a, b, c, x[9], 12, 0x8b44f7af);
+      c = ff(c, d, a, b, x[10], 17, 0xffff5bb1);
+      b = ff(b, c, d, a, x[11], 22, 0x895cd7be);
+      a = ff(a, b, c, d, x[12], 7, 0x6b901122);
+      d = ff(d, a, b, c, x[13], 12, 0xfd987193);
+      c = ff(c, d, a, b, x[14], 17, 0xa679438e);
+      b = ff(b, c, d, a, x[15], 22, 0x49b40821);
+      a = gg(a, b, c, d, x[1], 5, 0xf61e2562);
+      d = gg(d, a, b, c, x[6], 9, 0xc040b340);
+      c = gg(c, d, a, b, x[11], 14, 0x265e5a51);
+      b = gg(b, c, d, a, x[0], 20, 0xe9b6c7aa);
+      a = gg(a, b, c, d, x[5], 5, 0xd62f105d);
+      d = gg(d, a, b, c, x[10], 9, 0x02441453);
+      c = gg(c, d, a, b, x[15], 14, 0xd8a1e681);
+      b = gg(b, c, d, a, x[4], 20, 0xe7d3fbc8);
+      a = gg(a, b, c, d, x[9], 5, 0x21e1cde6);
+      d = gg(d, a, b, c, x[14], 9, 0xc33707d6);
+      c = gg(c, d, a, b, x[3], 14, 0xf4d50d87);
+      b = gg(b, c, d, a, x[8], 20, 0x455a14ed);
+      a = gg(a, b, c, d, x[13], 5, 0xa9e3e905);
+      d = gg(d, a, b, c, x[2], 9, 0xfcefa3f8);
+      c = gg(c, d, a, b, x[7], 14, 0x676f02d9);
+      b = gg(b, c, d, a, x[12], 20, 0x8d2a4c8a);
+      a = hh(a, b, c, d, x[5], 4, 0xfffa3942);
+      d = hh(d, a, b, c, x[8], 11, 0x8771f681);
+      c = hh(c, d, a, b, x[11], 16, 0x6d9d6122);
+      b = hh(b, c, d, a, x[14], 23, 0xfde5380c);
+      a = hh(a, b, c, d, x[1], 4, 0xa4beea44);
+      d = hh(d, a, b, c, x[4], 11, 0x4bdecfa9);
+      c = hh(c, d, a, b, x[7], 16, 0xf6bb4b60);
+      b = hh(b, c, d, a, x[10], 23, 0xbebfbc70);
+      a = hh(a, b, c, d, x[13], 4, 0x289b7ec6);
+      d = hh(d, a, b, c, x[0], 11, 0xeaa127fa);
+      c = hh(c, d, a, b, x[3], 16, 0xd4ef3085);
+      b = hh(b, c, d, a, x[6], 23, 0x04881d05);
+      a = hh(a, b, c, d, x[9], 4, 0xd9d4d039);
+      d = hh(d, a, b, c, x[12], 11, 0xe6db99e5);
+      c = hh(c, d, a, b, x[15], 16, 0x1fa27cf8);
+      b = hh(b, c, d, a, x[2], 23, 0xc4ac5665);
+      a = ii(a, b, c, d, x[0], 6, 0xf4292244);
+      d = ii(d, a, b, c, x[7], 10, 0x432aff97);
+      c = ii(c, d, a, b, x[14], 15, 0xab9423a7);
+      b = ii(b, c, d, a, x[5], 21, 0xfc93a039);
+      a = ii(a, b, c, d, x[12], 6, 0x655b59c3);
+      d = ii(d, a, b, c, x[3], 10, 0x8f0ccc92);
+      c = ii(c, d, a, b, x[10], 15, 0xffeff47d);
+      b = ii(b, c, d, a, x[1], 21, 0x85845dd1);
+      a = ii(a, b, c, d, x[8], 6, 0x6fa87e4f);
+      d = ii(d, a, b, c, x[15], 10, 0xfe2ce6e0);
+      c = ii(c, d, a, b, x[6], 15, 0xa3014314);
+      b = ii(b, c, d, a, x[13], 21, 0x4e0811a1);
+      a = ii(a, b, c, d, x[4], 6, 0xf7537e82);
+      d = ii(d, a, b, c, x[11], 10, 0xbd3af235);
+      c = ii(c, d, a, b, x[2], 15, 0x2ad7d2bb);
+      b = ii(b, c, d, a, x[9], 21, 0xeb86d391);
+      state[0] += a;
+      state[1] += b;
+      state[2] += c;
+      state[3] += d;
+    }
+
+    private static int ff(int a, int b, int c, int d, int x, int s, int k) {
+      return b + Integer.rotateLeft(a + ((b & c) | (~b & d)) + x + k, s);
+    }
+
+    private static int gg(int a, int b, int c, int d, int x, int s, int k) {
+      return b + Integer.rotateLeft(a + ((b & d) | (c & ~d)) + x + k, s);
+    }
+
+    private static int hh(int a, int b, int c, int d, int x, int s, int k) {
+      return b + Integer.rotateLeft(a + (b ^ c ^ d) + x + k, s);
+    }
+
+    private static int ii(int a, int b, int c, int d, int x, int s, int k) {
+      return b + Integer.rotateLeft(a + (c ^ (b | ~d)) + x + k, s);
+    }
+  }
+}
@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.*;
 import java.util.stream.*;
@@ -12,6 +14,12 @@ public class Program {
     System.out.println(lines.stream().filter(Program::isNiceLegacy).count());
     System.out.println("Part 2:");
     System.out.println(lines.stream().filter(Program::isNiceModern).count());
+
+    var counts = NiceClassifier.countNice(Path.of("../input/day05.txt"));
+    System.out.println("Part 1 (compiled):");
+    System.out.println(counts.legacy);
+    System.out.println("Part 2 (compiled):");
+    System.out.println(counts.modern);
   }
 
   static List<String> _substringBlacklist = Arrays.asList("ab", "cd", "pq", "xy");
@@ -111,4 +119,110 @@ public class Program {
     return () -> zip3Iterator;
   }
 
-}
\ No newline at end of file
+  record NiceCounts(long legacy, long modern) {
+    NiceCounts add(NiceCounts other) {
+      return new NiceCounts(legacy + other.legacy, modern + other.modern);
+    }
+  }
+
+  /* Checks the rules of both parts in a single pass over the bytes of each line. Repeated pairs
+     are found with a 26x26 table holding, per pair of letters, the line and position where it
+     was first seen on this line (keeping the first occurrence is what makes the non-overlap
+     check correct); stamping the line number means the table never has to be cleared. The
+     file is split at line boundaries into chunks that are classified in parallel. */
+  static class NiceClassifier {
+    static final long CHUNK_SIZE = 1 << 24;
+    static final int LEGACY = 1, MODERN = 2;
+
+    private final int[] pairLine = new int[26 * 26], pairPosition = new int[26 * 26];
+    private int line;
+
+    static NiceCounts countNice(Path path) throws java.io.IOException {
+      try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        var boundaries = lineBoundaries(channel);
+        return IntStream.range(0, boundaries.length - 1).parallel()
+          .mapToObj(i -> new NiceClassifier().countNice(map(channel, boundaries[i], boundaries[i + 1])))
+          .reduce(new NiceCounts(0, 0), NiceCounts::add);
+      }
+    }
+
+    NiceCounts countNice(ByteBuffer chunk) {
+      long legacy = 0, modern = 0;
+      var start = 0;
+      for (int i = 0; i <= chunk.limit(); i += 1) {
+        if (i < chunk.limit() && chunk.get(i) != '\n') { continue; }
+        var end = 0 < i && chunk.get(i - 1) == '\r' ? i - 1 : i;
+        if (start < end) {
+          var flags = classify(chunk, start, end);
+          legacy += flags & LEGACY;
+          modern += (flags & MODERN) >>> 1;
+        }
+        start = i + 1;
+      }
+      return new NiceCounts(legacy, modern);
+    }
+
+    /* Returns LEGACY and/or MODERN for the line between from and to. */
+    int classify(ByteBuffer bytes, int from, int to) {
+      line += 1;
+      int vowels = 0;
+      boolean blacklisted = false, doubled = false, sandwich = false, repeatedPair = false;
+      int previous = -1, beforePrevious = -1;
+      for (int i = from; i < to; i += 1) {
+        int c = bytes.get(i);
+        switch (c) {
+          case 'a', 'e', 'i', 'o', 'u' -> vowels += 1;
+          case 'b', 'd', 'q', 'y' -> blacklisted |= previous == c - 1;
+          default -> { }
+        }
+        doubled |= previous == c;
+        sandwich |= beforePrevious == c;
+        if ('a' <= previous && previous <= 'z' && 'a' <= c && c <= 'z') {
+          var pair = (previous - 'a') * 26 + (c - 'a');
+          if (pairLine[pair] != line) {
+            pairLine[pair] = line;
+            pairPosition[pair] = i;
+          } else if (pairPosition[pair] < i - 1) {
+            repeatedPair = true;
+          }
+        }
+        beforePrevious = previous;
+        previous = c;
+      }
+      var legacy = !blacklisted && 3 <= vowels && doubled ? LEGACY : 0;
+      var modern = sandwich && repeatedPair ? MODERN : 0;
+      return legacy | modern;
+    }
+
+    /* Splits the file into chunks of about CHUNK_SIZE bytes, each ending right after a newline
+       (or at the end of the file). */
+    static long[] lineBoundaries(FileChannel channel) throws java.io.IOException {
+      var size = channel.size();
+      var boundaries = LongStream.builder().add(0);
+      var probe = ByteBuffer.allocate(4096);
+      var position = CHUNK_SIZE;
+      while (position < size) {
+        probe.clear();
+        channel.read(probe, position);
+        probe.flip();
+        var newline = -1;
+        while (probe.hasRemaining() && newline < 0) {
+          if (probe.get() == '\n') { newline = probe.position(); }
+        }
+        if (newline < 0) {
+          position += probe.limit();
+          continue;
+        }
+        boundaries.add(position + newline);
+        position += newline + CHUNK_SIZE;
+      }
+      boundaries.add(size);
+      return boundaries.build().distinct().toArray();
+    }
+
+    static ByteBuffer map(FileChannel channel, long from, long to) {
+      try { return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from); }
+      catch (java.io.IOException x) { throw new java.io.UncheckedIOException(x); }
+    }
+  }
+}
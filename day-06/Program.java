@@ -16,18 +16,42 @@ public class Program {
       .map(Optional::orElseThrow)
       .collect(toList());
     System.out.println("Part 1:");
-    Map<Coord, Integer> lights = new HashMap<>();
-    for(var instruction: instructions) {
-      for(var coord: allCoordsBetween(instruction.from, instruction.to).collect(toList())) {
-        lights.put(coord, operationPart1(lights.getOrDefault(coord, 0), instruction.operation));
-      }
-    }
-    System.out.println(brightness(lights));
-    
+    var lights = new LightGrid(1000, 1000);
+    instructions.forEach(lights::apply);
+    System.out.println(lights.lightsOn());
+
+    System.out.println("Part 2:");
+    var brightness = new BrightnessGrid(1000, 1000);
+    instructions.forEach(brightness::apply);
+    System.out.println(brightness.brightness());
+
+    System.out.println("Part 1 (parallel):");
+    var parallelLights = new LightGrid(1000, 1000);
+    applyInParallel(parallelLights, instructions);
+    System.out.println(parallelLights.lightsOn());
+    System.out.println("Part 2 (parallel):");
+    var parallelBrightness = new BrightnessGrid(1000, 1000);
+    applyInParallel(parallelBrightness, instructions);
+    System.out.println(parallelBrightness.brightness());
+
+    var compressed = new CompressedGrid(instructions);
+    instructions.forEach(compressed::apply);
+    System.out.println("Part 1 (compressed):");
+    System.out.println(compressed.lightsOn());
+    System.out.println("Part 2 (compressed):");
+    System.out.println(compressed.brightness());
+
+    var index = new RectangleIndex(1000, 1000);
+    instructions.forEach(index::apply);
+    System.out.println("Part 1 (index):");
+    System.out.println(index.lightsOn(new Coord(0, 0), new Coord(999, 999)));
+    System.out.println("Part 2 (index):");
+    System.out.println(index.brightness(new Coord(0, 0), new Coord(999, 999)));
+
     System.out.println("Part 1 (fold):");
     System.out.println(brightness(runInstructions(instructions, Program::operationPart1)));
-    
-    System.out.println("Part 2:");
+
+    System.out.println("Part 2 (fold):");
     System.out.println(brightness(runInstructions(instructions, Program::operationPart2)));
   }
 
@@ -36,7 +60,7 @@ public class Program {
   }
 
   static Map<Coord, Integer> runInstructions(
-    List<Instruction> instructions, BiFunction<Integer, String, Integer> operation
+    List<Instruction> instructions, BiFunction<Integer, Operation, Integer> operation
   ) {
     return foldLeft(
       instructionsPerCoord(instructions),
@@ -48,7 +72,310 @@ public class Program {
     );
   }
 
-  static Stream<Tuple<String, Coord>> instructionsPerCoord(List<Instruction> instructions) {
+  /* Lights only change together with all other lights in the same instruction rectangles, so
+     the grid can be cut along every rectangle edge into cells that always have a uniform state.
+     Only those cells are tracked, and totals are weighted by their area; the cost depends on
+     the number of instructions, not on the size of the grid. */
+  static class CompressedGrid {
+    private final int[] xs, ys;
+    private final boolean[] on;
+    private final int[] levels;
+    private final int cellCount;
+
+    /* The number of cells is the product of the number of distinct x and y edges, which for a
+       few tens of thousands of instructions no longer fits in an array; that is rejected up
+       front, which also keeps every cell index below within int range. */
+    CompressedGrid(List<Instruction> instructions) {
+      xs = edges(instructions.stream().flatMapToInt(i -> IntStream.of(i.from.x, i.to.x + 1)));
+      ys = edges(instructions.stream().flatMapToInt(i -> IntStream.of(i.from.y, i.to.y + 1)));
+      var cells = (long)Math.max(0, xs.length - 1) * Math.max(0, ys.length - 1);
+      if (Integer.MAX_VALUE - 8 < cells) {
+        throw new IllegalArgumentException("Too many cells to compress the grid into: " + cells);
+      }
+      cellCount = (int)cells;
+      on = new boolean[cellCount];
+      levels = new int[cellCount];
+    }
+
+    private static int[] edges(IntStream coordinates) {
+      return coordinates.sorted().distinct().toArray();
+    }
+
+    void apply(Instruction instruction) {
+      int fromX = Arrays.binarySearch(xs, instruction.from.x);
+      int toX = Arrays.binarySearch(xs, instruction.to.x + 1);
+      int fromY = Arrays.binarySearch(ys, instruction.from.y);
+      int toY = Arrays.binarySearch(ys, instruction.to.y + 1);
+      var width = xs.length - 1;
+      for (int y = fromY; y < toY; y += 1) {
+        var row = (int)((long)y * width);
+        for (int cell = row + fromX; cell < row + toX; cell += 1) {
+          switch (instruction.operation) {
+            case TURN_ON -> {
+              on[cell] = true;
+              levels[cell] += 1;
+            }
+            case TURN_OFF -> {
+              on[cell] = false;
+              levels[cell] = Math.max(0, levels[cell] - 1);
+            }
+            case TOGGLE -> {
+              on[cell] = !on[cell];
+              levels[cell] += 2;
+            }
+          }
+        }
+      }
+    }
+
+    long lightsOn() {
+      return sumByArea(cell -> on[cell] ? 1 : 0);
+    }
+
+    long brightness() {
+      return sumByArea(cell -> levels[cell]);
+    }
+
+    private long sumByArea(IntUnaryOperator valueOf) {
+      var width = xs.length - 1;
+      long total = 0;
+      for (int cell = 0; cell < cellCount; cell += 1) {
+        int x = cell % width, y = cell / width;
+        total += (long)valueOf.applyAsInt(cell) * (xs[x + 1] - xs[x]) * (ys[y + 1] - ys[y]);
+      }
+      return total;
+    }
+  }
+
+  /* An index that takes instructions one at a time and can report, at any moment, how many
+     lights are on and how bright they are inside a rectangle. The grid is split into quadrants
+     recursively; every node keeps the totals for its region, plus a pending operation for its
+     descendants. An update or query only descends into nodes that straddle the rectangle
+     edge, so it touches nodes along the rectangle's perimeter rather than every light: a
+     handful per level along each edge, which is O(N) nodes on an N x N grid, not a
+     polylogarithmic number.
+
+     Turning off is not a plain addition for brightness (it stops at zero), so every node also
+     keeps its lowest brightness, how many lights have it and the second lowest brightness. As
+     long as turning off either lowers every light or leaves exactly the lights at zero alone,
+     it can be applied to a whole node; otherwise it descends until it can, which is paid for
+     by earlier updates (amortized) rather than bounded per call. */
+  static class RectangleIndex {
+    private static final byte NONE = 0, ON = 1, OFF = 2, FLIP = 3;
+    private static final int NO_VALUE = Integer.MAX_VALUE;
+
+    private final int width, height;
+    private final int[] children, area;
+    private final int[] lit;
+    private final byte[] pendingLights;
+    private final long[] sum;
+    private final int[] min, minCount, secondMin, pendingAddMin, pendingAddOther;
+    private int nodes;
+
+    RectangleIndex(int width, int height) {
+      this.width = width;
+      this.height = height;
+      var count = countNodes(0, 0, width, height);
+      children = new int[4 * count];
+      area = new int[count];
+      lit = new int[count];
+      pendingLights = new byte[count];
+      sum = new long[count];
+      min = new int[count];
+      minCount = new int[count];
+      secondMin = new int[count];
+      pendingAddMin = new int[count];
+      pendingAddOther = new int[count];
+      build(0, 0, width, height);
+    }
+
+    void apply(Instruction instruction) {
+      var light = switch (instruction.operation) {
+        case TURN_ON -> ON;
+        case TURN_OFF -> OFF;
+        case TOGGLE -> FLIP;
+      };
+      updateLights(0, 0, 0, width, height, instruction.from, instruction.to, light);
+      updateBrightness(
+        0, 0, 0, width, height, instruction.from, instruction.to, instruction.operation
+      );
+    }
+
+    long lightsOn(Coord from, Coord to) {
+      return query(0, 0, 0, width, height, from, to, false);
+    }
+
+    long brightness(Coord from, Coord to) {
+      return query(0, 0, 0, width, height, from, to, true);
+    }
+
+    private static int split(int from, int to) {
+      return to - from > 1 ? (from + to) >>> 1 : to;
+    }
+
+    private static int countNodes(int x0, int y0, int x1, int y1) {
+      if (x0 == x1 || y0 == y1) { return 0; }
+      if (x1 - x0 == 1 && y1 - y0 == 1) { return 1; }
+      int xm = split(x0, x1), ym = split(y0, y1);
+      return 1 + countNodes(x0, y0, xm, ym) + countNodes(xm, y0, x1, ym)
+        + countNodes(x0, ym, xm, y1) + countNodes(xm, ym, x1, y1);
+    }
+
+    private int build(int x0, int y0, int x1, int y1) {
+      if (x0 == x1 || y0 == y1) { return -1; }
+      var node = nodes;
+      nodes += 1;
+      area[node] = (x1 - x0) * (y1 - y0);
+      minCount[node] = area[node];
+      secondMin[node] = NO_VALUE;
+      Arrays.fill(children, 4 * node, 4 * node + 4, -1);
+      if (area[node] == 1) { return node; }
+      int xm = split(x0, x1), ym = split(y0, y1);
+      children[4 * node] = build(x0, y0, xm, ym);
+      children[4 * node + 1] = build(xm, y0, x1, ym);
+      children[4 * node + 2] = build(x0, ym, xm, y1);
+      children[4 * node + 3] = build(xm, ym, x1, y1);
+      return node;
+    }
+
+    private static boolean outside(int x0, int y0, int x1, int y1, Coord from, Coord to) {
+      return to.x < x0 || x1 <= from.x || to.y < y0 || y1 <= from.y;
+    }
+
+    private static boolean covers(int x0, int y0, int x1, int y1, Coord from, Coord to) {
+      return from.x <= x0 && x1 - 1 <= to.x && from.y <= y0 && y1 - 1 <= to.y;
+    }
+
+    private void updateLights(
+      int node, int x0, int y0, int x1, int y1, Coord from, Coord to, byte operation
+    ) {
+      if (outside(x0, y0, x1, y1, from, to)) { return; }
+      if (covers(x0, y0, x1, y1, from, to)) {
+        applyLights(node, operation);
+        return;
+      }
+      pushDown(node);
+      int xm = split(x0, x1), ym = split(y0, y1);
+      lit[node] = 0;
+      for (int q = 0; q < 4; q += 1) {
+        var child = children[4 * node + q];
+        if (child < 0) { continue; }
+        int cx0 = q % 2 == 0 ? x0 : xm, cx1 = q % 2 == 0 ? xm : x1;
+        int cy0 = q < 2 ? y0 : ym, cy1 = q < 2 ? ym : y1;
+        updateLights(child, cx0, cy0, cx1, cy1, from, to, operation);
+        lit[node] += lit[child];
+      }
+    }
+
+    private void updateBrightness(
+      int node, int x0, int y0, int x1, int y1, Coord from, Coord to, Operation operation
+    ) {
+      if (outside(x0, y0, x1, y1, from, to)) { return; }
+      if (covers(x0, y0, x1, y1, from, to)) {
+        switch (operation) {
+          case TURN_ON -> { addBrightness(node, 1, 1); return; }
+          case TOGGLE -> { addBrightness(node, 2, 2); return; }
+          case TURN_OFF -> {
+            if (1 <= min[node]) { addBrightness(node, -1, -1); return; }
+            if (secondMin[node] == NO_VALUE || 2 <= secondMin[node]) {
+              addBrightness(node, 0, -1);
+              return;
+            }
+          }
+        }
+      }
+      pushDown(node);
+      int xm = split(x0, x1), ym = split(y0, y1);
+      for (int q = 0; q < 4; q += 1) {
+        var child = children[4 * node + q];
+        if (child < 0) { continue; }
+        int cx0 = q % 2 == 0 ? x0 : xm, cx1 = q % 2 == 0 ? xm : x1;
+        int cy0 = q < 2 ? y0 : ym, cy1 = q < 2 ? ym : y1;
+        updateBrightness(child, cx0, cy0, cx1, cy1, from, to, operation);
+      }
+      pullUpBrightness(node);
+    }
+
+    private long query(
+      int node, int x0, int y0, int x1, int y1, Coord from, Coord to, boolean brightness
+    ) {
+      if (outside(x0, y0, x1, y1, from, to)) { return 0; }
+      if (covers(x0, y0, x1, y1, from, to)) { return brightness ? sum[node] : lit[node]; }
+      pushDown(node);
+      int xm = split(x0, x1), ym = split(y0, y1);
+      long total = 0;
+      for (int q = 0; q < 4; q += 1) {
+        var child = children[4 * node + q];
+        if (child < 0) { continue; }
+        int cx0 = q % 2 == 0 ? x0 : xm, cx1 = q % 2 == 0 ? xm : x1;
+        int cy0 = q < 2 ? y0 : ym, cy1 = q < 2 ? ym : y1;
+        total += query(child, cx0, cy0, cx1, cy1, from, to, brightness);
+      }
+      return total;
+    }
+
+    private void applyLights(int node, byte operation) {
+      lit[node] = switch (operation) {
+        case ON -> area[node];
+        case OFF -> 0;
+        default -> area[node] - lit[node];
+      };
+      var pending = pendingLights[node];
+      pendingLights[node] = operation != FLIP ? operation
+        : pending == ON ? OFF : pending == OFF ? ON : pending == FLIP ? NONE : FLIP;
+    }
+
+    /* Adds addMin to the lights at the node's lowest brightness and addOther to all others. */
+    private void addBrightness(int node, int addMin, int addOther) {
+      sum[node] += (long)addMin * minCount[node] + (long)addOther * (area[node] - minCount[node]);
+      min[node] += addMin;
+      if (secondMin[node] != NO_VALUE) { secondMin[node] += addOther; }
+      pendingAddMin[node] += addMin;
+      pendingAddOther[node] += addOther;
+    }
+
+    private void pushDown(int node) {
+      var lowest = min[node] - pendingAddMin[node];
+      for (int q = 0; q < 4; q += 1) {
+        var child = children[4 * node + q];
+        if (child < 0) { continue; }
+        if (pendingLights[node] != NONE) { applyLights(child, pendingLights[node]); }
+        if (pendingAddMin[node] != 0 || pendingAddOther[node] != 0) {
+          var addMin = min[child] == lowest ? pendingAddMin[node] : pendingAddOther[node];
+          addBrightness(child, addMin, pendingAddOther[node]);
+        }
+      }
+      pendingLights[node] = NONE;
+      pendingAddMin[node] = 0;
+      pendingAddOther[node] = 0;
+    }
+
+    private void pullUpBrightness(int node) {
+      long total = 0;
+      int lowest = NO_VALUE, lowestCount = 0, second = NO_VALUE;
+      for (int q = 0; q < 4; q += 1) {
+        var child = children[4 * node + q];
+        if (child < 0) { continue; }
+        total += sum[child];
+        if (min[child] < lowest) {
+          second = Math.min(lowest, secondMin[child]);
+          lowest = min[child];
+          lowestCount = minCount[child];
+        } else if (min[child] == lowest) {
+          second = Math.min(second, secondMin[child]);
+          lowestCount += minCount[child];
+        } else {
+          second = Math.min(second, min[child]);
+        }
+      }
+      sum[node] = total;
+      min[node] = lowest;
+      minCount[node] = lowestCount;
+      secondMin[node] = second;
+    }
+  }
+
+  static Stream<Tuple<Operation, Coord>> instructionsPerCoord(List<Instruction> instructions) {
     return instructions.stream()
       .flatMap(i -> 
         allCoordsBetween(i.from, i.to)
@@ -57,31 +384,26 @@ public class Program {
       );
   }
 
-  static Integer operationPart1(Integer current, String operation) {
+  static Integer operationPart1(Integer current, Operation operation) {
     return switch (operation) {
-      case "turn on" -> 1;
-      case "turn off" -> 0;
-      case "toggle" -> 1 - current;
-      default -> 0;
+      case TURN_ON -> 1;
+      case TURN_OFF -> 0;
+      case TOGGLE -> 1 - current;
     };
   }
   
-  static Integer operationPart2(Integer current, String operation) {
+  static Integer operationPart2(Integer current, Operation operation) {
     return switch (operation) {
-      case "turn on" -> current + 1;
-      case "turn off" -> Math.max(0, current -1);
-      case "toggle" -> current + 2;
-      default -> current;
+      case TURN_ON -> current + 1;
+      case TURN_OFF -> Math.max(0, current -1);
+      case TOGGLE -> current + 2;
     };
   }
 
   static <T, U> U foldLeft(Stream<T> stream, U seed, BiFunction<U, ? super T, U> accumulator) {
-    var acc = seed;
-    var iterator = stream.iterator();
-    while(iterator.hasNext()) {
-      acc = accumulator.apply(acc, iterator.next());
-    }
-    return acc;
+    var fold = new Object() { U acc = seed; };
+    stream.forEachOrdered(t -> fold.acc = accumulator.apply(fold.acc, t));
+    return fold.acc;
   }
 
   static Stream<Coord> allCoordsBetween(Coord from, Coord to) {
@@ -94,17 +416,127 @@ public class Program {
 
   record Coord(int x, int y) { }
 
-  record Instruction(String operation, Coord from, Coord to) { }
+  enum Operation {
+    TURN_ON, TURN_OFF, TOGGLE;
+
+    static Optional<Operation> parse(String s) {
+      return Optional.ofNullable(switch (s) {
+        case "turn on" -> TURN_ON;
+        case "turn off" -> TURN_OFF;
+        case "toggle" -> TOGGLE;
+        default -> null;
+      });
+    }
+  }
+
+  record Instruction(Operation operation, Coord from, Coord to) { }
+
+  interface Grid {
+    int height();
+
+    /* Applies the instruction to the given rows only. */
+    void apply(Instruction instruction, int fromRow, int toRow);
+
+    default void apply(Instruction instruction) { apply(instruction, 0, height()); }
+  }
+
+  /* Splits the grid into horizontal bands, one per core. Each band replays all instructions,
+     clipped to its own rows; since no two bands share a row, no locking is needed, and every
+     light still sees the instructions in their original order. */
+  static void applyInParallel(Grid grid, List<Instruction> instructions) {
+    var bands = Math.min(grid.height(), Runtime.getRuntime().availableProcessors());
+    IntStream.range(0, bands).parallel().forEach(band -> {
+      int fromRow = band * grid.height() / bands, toRow = (band + 1) * grid.height() / bands;
+      for (var instruction: instructions) { grid.apply(instruction, fromRow, toRow); }
+    });
+  }
+
+  /* Part 1 lights, one bit per light, 64 lights to a long. A rectangle is applied row by row,
+     one word at a time, with a mask selecting the lights inside the rectangle. */
+  static class LightGrid implements Grid {
+    private final int wordsPerRow, height;
+    private final long[] bits;
+
+    LightGrid(int width, int height) {
+      this.height = height;
+      wordsPerRow = (width + 63) / 64;
+      bits = new long[wordsPerRow * height];
+    }
+
+    public int height() { return height; }
+
+    public void apply(Instruction instruction, int fromRow, int toRow) {
+      int fromX = instruction.from.x, toX = instruction.to.x;
+      int firstWord = fromX >>> 6, lastWord = toX >>> 6;
+      var lastRow = Math.min(instruction.to.y, toRow - 1);
+      for (int y = Math.max(instruction.from.y, fromRow); y <= lastRow; y += 1) {
+        var row = y * wordsPerRow;
+        for (int word = firstWord; word <= lastWord; word += 1) {
+          var mask = -1L;
+          if (word == firstWord) { mask &= -1L << (fromX & 63); }
+          if (word == lastWord) { mask &= -1L >>> (63 - (toX & 63)); }
+          switch (instruction.operation) {
+            case TURN_ON -> bits[row + word] |= mask;
+            case TURN_OFF -> bits[row + word] &= ~mask;
+            case TOGGLE -> bits[row + word] ^= mask;
+          }
+        }
+      }
+    }
+
+    long lightsOn() {
+      return LongStream.of(bits).map(Long::bitCount).sum();
+    }
+  }
+
+  /* Part 2 lights, one int of brightness per light. */
+  static class BrightnessGrid implements Grid {
+    private final int width, height;
+    private final int[] levels;
+
+    BrightnessGrid(int width, int height) {
+      this.width = width;
+      this.height = height;
+      levels = new int[width * height];
+    }
+
+    public int height() { return height; }
+
+    public void apply(Instruction instruction, int fromRow, int toRow) {
+      int fromX = instruction.from.x, toX = instruction.to.x;
+      var lastRow = Math.min(instruction.to.y, toRow - 1);
+      for (int y = Math.max(instruction.from.y, fromRow); y <= lastRow; y += 1) {
+        var row = y * width;
+        switch (instruction.operation) {
+          case TURN_ON -> {
+            for (int x = row + fromX; x <= row + toX; x += 1) { levels[x] += 1; }
+          }
+          case TURN_OFF -> {
+            for (int x = row + fromX; x <= row + toX; x += 1) { levels[x] = Math.max(0, levels[x] - 1); }
+          }
+          case TOGGLE -> {
+            for (int x = row + fromX; x <= row + toX; x += 1) { levels[x] += 2; }
+          }
+        }
+      }
+    }
+
+    long brightness() {
+      return IntStream.of(levels).asLongStream().sum();
+    }
+  }
 
   static class InstructionParser {
     static Pattern pattern = Pattern.compile("^([a-z ]+) (\\d+),(\\d+) through (\\d+),(\\d+)$");
     public static Optional<Instruction> parse(String s) {
       var matcher = pattern.matcher(s);
       if (!matcher.matches()) { return Optional.empty(); }
-      return toCoord(matcher, 2, 3)
-        .flatMap(from -> 
-          toCoord(matcher, 4, 5)
-            .map(to -> new Instruction(matcher.group(1), from, to))
+      return Operation.parse(matcher.group(1))
+        .flatMap(operation -> toCoord(matcher, 2, 3)
+          .flatMap(from -> 
+            toCoord(matcher, 4, 5)
+              .map(to -> new Instruction(operation, from, to))
+          )
         );
     }
 
@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.*;
 import java.util.stream.*;
@@ -34,9 +36,149 @@ public class Program {
       sortedWires
     );
     System.out.println(wireValues2.get(wireA));
+
+    System.out.println("Part 1 (compiled):");
+    var circuit = CompiledCircuit.compile(connections, sortedWires);
+    var registers = circuit.run();
+    var compiled1 = registers[circuit.slot(wireA)];
+    System.out.println((int)compiled1);
+    System.out.println("Part 2 (compiled):");
+    var circuit2 = CompiledCircuit.compile(
+      connections.stream()
+        .map(c -> c.rhs.equals(wireB) ? new Connection(new Literal(compiled1), wireB) : c)
+        .collect(toList()),
+      sortedWires
+    );
+    System.out.println((int)circuit2.run()[circuit2.slot(wireA)]);
+
+    System.out.println("Part 2 (incremental):");
+    var incremental = new IncrementalCircuit(circuit);
+    var reevaluated = incremental.override(Map.of(wireB, (int)compiled1));
+    System.out.println(incremental.value(wireA));
+    System.out.printf("(%d of %d gates re-evaluated)%n", reevaluated, circuit.gateCount());
+    System.out.println("Part 1 (incremental, released):");
+    reevaluated = incremental.release(List.of(wireB));
+    System.out.println(incremental.value(wireA));
+    System.out.printf("(%d of %d gates re-evaluated)%n", reevaluated, circuit.gateCount());
+
+    System.out.println("Parts 1 and 2 (batch):");
+    var batch = new BatchCircuit(circuit)
+      .run(List.of(Map.of(), Map.of(wireB, (int)compiled1)), List.of(wireA));
+    System.out.println(batch[0][0]);
+    System.out.println(batch[1][0]);
+
+    System.out.println("Part 1 (cycle-tolerant):");
+    var fixedPoint = evaluateWithCycles(connections, 100);
+    System.out.println(fixedPoint.values.get(wireA));
+
+    System.out.println("Part 1 (netlist):");
+    var netlist = Netlist.parse(Path.of("../input/day07.txt"));
+    var netlistA = netlist.id("a");
+    if (netlistA < 0) { throw new IllegalStateException("The netlist has no wire a"); }
+    /* Wire ids are the slots of the lowered circuit. */
+    System.out.println((int)netlist.compile().orElseThrow().run()[netlistA]);
+
+    if (0 < args.length && args[0].equals("benchmark")) { benchmark(); }
   }
 
-  record Edge(Wire from, Wire to) { };
+  record ComponentReport(List<Wire> wires, int iterations, boolean converged) { }
+
+  record FixedPointResult(Map<Wire, Integer> values, List<ComponentReport> cycles) { }
+
+  /* Evaluates circuits that may contain feedback loops. The wires are split into strongly
+     connected components (Tarjan's algorithm, with an explicit stack so that deep circuits do
+     not overflow the call stack); Tarjan finds the components a component depends on before
+     the component itself, so they can be evaluated in the order they are found. A component
+     with a loop starts at 0 and is evaluated repeatedly until no value changes, or until
+     maxIterations passes have been made. Wires that are read but never driven are 0. */
+  static FixedPointResult evaluateWithCycles(List<Connection> connections, int maxIterations) {
+    var ids = new HashMap<Wire, Integer>();
+    for (var connection: connections) { ids.put(connection.rhs, ids.size()); }
+    var sources = connections.stream()
+      .map(c -> c.lhs.getWires().mapToInt(w -> ids.computeIfAbsent(w, u -> ids.size())).toArray())
+      .toArray(int[][]::new);
+    var wireCount = connections.size();
+    var values = new int[ids.size()];
+    Function<Wire, Integer> valueOf = w -> values[ids.get(w)];
+    var cycles = new ArrayList<ComponentReport>();
+
+    var index = new int[wireCount];
+    var low = new int[wireCount];
+    var onStack = new boolean[wireCount];
+    var stack = new int[wireCount];
+    var callStack = new int[wireCount];
+    var nextSource = new int[wireCount];
+    Arrays.fill(index, -1);
+    int counter = 0, stackSize = 0;
+    for (int root = 0; root < wireCount; root += 1) {
+      if (0 <= index[root]) { continue; }
+      var depth = 0;
+      callStack[0] = root;
+      index[root] = low[root] = counter++;
+      stack[stackSize++] = root;
+      onStack[root] = true;
+      while (0 <= depth) {
+        var node = callStack[depth];
+        if (nextSource[node] < sources[node].length) {
+          var source = sources[node][nextSource[node]++];
+          if (wireCount <= source) { continue; }
+          if (index[source] < 0) {
+            index[source] = low[source] = counter++;
+            stack[stackSize++] = source;
+            onStack[source] = true;
+            callStack[++depth] = source;
+          } else if (onStack[source]) {
+            low[node] = Math.min(low[node], index[source]);
+          }
+          continue;
+        }
+        depth -= 1;
+        if (0 <= depth) { low[callStack[depth]] = Math.min(low[callStack[depth]], low[node]); }
+        if (low[node] != index[node]) { continue; }
+        var start = stackSize;
+        do { start -= 1; onStack[stack[start]] = false; } while (stack[start] != node);
+        var component = Arrays.copyOfRange(stack, start, stackSize);
+        stackSize = start;
+        var cyclic = 1 < component.length || IntStream.of(sources[node]).anyMatch(s -> s == node);
+        var iterations = 0;
+        var changed = true;
+        while (changed && iterations < (cyclic ? maxIterations : 1)) {
+          changed = false;
+          for (var wire: component) {
+            var value = connections.get(wire).lhs.calculateValue(valueOf) & 0xffff;
+            changed |= value != values[wire];
+            values[wire] = value;
+          }
+          iterations += 1;
+        }
+        if (cyclic) {
+          var wires = IntStream.of(component).mapToObj(w -> connections.get(w).rhs).collect(toList());
+          cycles.add(new ComponentReport(wires, iterations, !changed));
+        }
+      }
+    }
+    var result = new HashMap<Wire, Integer>();
+    ids.forEach((wire, id) -> result.put(wire, values[id]));
+    return new FixedPointResult(result, cycles);
+  }
+
+  /* Times the topological sort on a synthetic circuit of a million gates, where every gate
+     reads from two random earlier wires and the connections are listed in random order. */
+  static void benchmark() {
+    var random = new Random(7);
+    var gates = 1_000_000;
+    var connections = new ArrayList<Connection>(gates);
+    connections.add(new Connection(new Literal(1), new Wire("w0")));
+    for (int i = 1; i < gates; i += 1) {
+      var left = new Wire("w" + random.nextInt(i));
+      var right = new Wire("w" + random.nextInt(i));
+      connections.add(new Connection(new BinaryOp(left, Operator.OR, right), new Wire("w" + i)));
+    }
+    Collections.shuffle(connections, random);
+    var started = System.nanoTime();
+    var sorted = topologicalSort(connections).orElseThrow();
+    System.out.printf("Sorted %d wires in %.2fs%n", sorted.size(), (System.nanoTime() - started) / 1e9);
+  }
 
   static Map<Wire, Integer> calculateWireValues(
     List<Connection> connections, List<Wire> sortedWires
@@ -50,40 +192,611 @@ public class Program {
     return result;
   }
 
-  /* Kahn's algorithm: https://en.wikipedia.org/wiki/Topological_sorting#Kahn's_algorithm */
+  /* Kahn's algorithm: https://en.wikipedia.org/wiki/Topological_sorting#Kahn's_algorithm
+     Wires are numbered in the order of the connections; edges are kept in compressed sparse
+     row form (the successors of wire i are targets[offsets[i]] up to targets[offsets[i + 1]]),
+     and every wire counts its unprocessed incoming edges, so each edge is visited once. */
   static Optional<List<Wire>> topologicalSort(List<Connection> connections) {
-    var wires = connections.stream().map(c -> c.rhs).collect(toList());
-    var edges = connections.stream().flatMap(c -> getEdges(c)).collect(toList());
-    var edgesByTo = edges.stream().collect(groupingBy(e -> e.to));
-    var edgesByFrom = edges.stream().collect(groupingBy(e -> e.from));
+    var ids = new HashMap<Wire, Integer>();
+    for (var connection: connections) { ids.put(connection.rhs, ids.size()); }
+    var wireCount = ids.size();
+    var sources = connections.stream()
+      .map(c -> c.lhs.getWires().mapToInt(w -> ids.computeIfAbsent(w, u -> ids.size())).toArray())
+      .toArray(int[][]::new);
 
-    var nodeQueue = new LinkedList<>(
-      wires.stream().filter(w -> !edgesByTo.containsKey(w)).collect(toList())
-    );
-    var removedEdges = new HashSet<Edge>();
-    var sorted = new ArrayList<Wire>(wires.size());
+    var offsets = new int[ids.size() + 1];
+    var inDegree = new int[wireCount];
+    for (int to = 0; to < wireCount; to += 1) {
+      for (var from: sources[to]) { offsets[from + 1] += 1; }
+      inDegree[to] = sources[to].length;
+    }
+    Arrays.parallelPrefix(offsets, Integer::sum);
+    var targets = new int[offsets[ids.size()]];
+    var filled = Arrays.copyOf(offsets, ids.size());
+    for (int to = 0; to < wireCount; to += 1) {
+      for (var from: sources[to]) {
+        targets[filled[from]] = to;
+        filled[from] += 1;
+      }
+    }
 
-    while (0 < nodeQueue.size()) {
-      var node = nodeQueue.poll();
-      sorted.add(node);
-      if (!edgesByFrom.containsKey(node)) { continue; }
-      for(var edge: edgesByFrom.get(node)) {
-        removedEdges.add(edge);
-        var nodeEdges = edgesByTo.getOrDefault(edge.to, List.of());
-        if (nodeEdges.stream().allMatch(e -> removedEdges.contains(e))) {
-          nodeQueue.add(edge.to);
+    var queue = new int[wireCount];
+    int head = 0, tail = 0;
+    for (int wire = 0; wire < wireCount; wire += 1) {
+      if (inDegree[wire] == 0) {
+        queue[tail] = wire;
+        tail += 1;
+      }
+    }
+    while (head < tail) {
+      var node = queue[head];
+      head += 1;
+      for (int e = offsets[node]; e < offsets[node + 1]; e += 1) {
+        var to = targets[e];
+        inDegree[to] -= 1;
+        if (inDegree[to] == 0) {
+          queue[tail] = to;
+          tail += 1;
         }
       }
     }
-    if (edges.stream().anyMatch(e -> !removedEdges.contains(e))) {
-      /* There was a cycle */
+    if (tail < wireCount) {
+      /* There was a cycle (or a wire that is never driven) */
       return Optional.empty();
     }
+    var sorted = new ArrayList<Wire>(wireCount);
+    for (int i = 0; i < wireCount; i += 1) { sorted.add(connections.get(queue[i]).rhs); }
     return Optional.of(sorted);
   }
 
-  static Stream<Edge> getEdges(Connection connection) {
-    return connection.lhs.getWires().map(w -> new Edge(w, connection.rhs));
+  /* The circuit lowered to a flat program: every wire, literal and intermediate result gets a
+     slot in a register file of 16-bit chars, and every gate becomes four ints (opcode, target,
+     left operand, right operand), in topological order. Running it is a single loop over the
+     program, without lookups or boxing. */
+  static class CompiledCircuit {
+    static final int COPY = 0, NOT = 1, AND = 2, OR = 3, LSHIFT = 4, RSHIFT = 5;
+    static final int BITS = 16;
+
+    private final Map<Wire, Integer> slots = new HashMap<>();
+    private final Map<Integer, Integer> literalSlots = new HashMap<>();
+    private final IntStream.Builder program = IntStream.builder();
+    private int[] instructions;
+    private char[] initial;
+    private int size;
+
+    private CompiledCircuit() { }
+
+    /* A circuit lowered elsewhere (see Netlist.compile): the instructions in the format above,
+       the initial register file (with the literals' values in place) and the wires' slots. */
+    CompiledCircuit(Map<Wire, Integer> slots, int[] instructions, char[] initial) {
+      this.slots.putAll(slots);
+      this.instructions = instructions;
+      this.initial = initial;
+      size = initial.length;
+    }
+
+    static CompiledCircuit compile(List<Connection> connections, List<Wire> sortedWires) {
+      var circuit = new CompiledCircuit();
+      sortedWires.forEach(circuit::allocate);
+      var connectionsByRhs = connections.stream().collect(toMap(c -> c.rhs, c -> c));
+      for (var wire: sortedWires) {
+        circuit.compile(connectionsByRhs.get(wire).lhs, circuit.allocate(wire));
+      }
+      circuit.instructions = circuit.program.build().toArray();
+      circuit.initial = new char[circuit.size];
+      circuit.literalSlots.forEach((literal, slot) -> circuit.initial[slot] = (char)literal.intValue());
+      return circuit;
+    }
+
+    /* The slot of a wire of the compiled circuit; unknown wires are an error, as the register
+       files of a compiled circuit cannot grow. */
+    int slot(Wire wire) {
+      var slot = slots.get(wire);
+      if (slot == null) {
+        throw new IllegalArgumentException("No wire " + wire.wire + " in the circuit");
+      }
+      return slot;
+    }
+
+    private int allocate(Wire wire) {
+      return slots.computeIfAbsent(wire, w -> newSlot());
+    }
+
+    int size() { return size; }
+
+    char[] run() {
+      var registers = initial.clone();
+      run(registers);
+      return registers;
+    }
+
+    /* Runs the program on a register file of at least size() slots; the literal slots must
+       hold their values already (as they do in the result of an earlier run). */
+    void run(char[] registers) {
+      for (int pc = 0; pc < instructions.length; pc += 4) {
+        registers[instructions[pc + 1]] = evaluate(pc, registers);
+      }
+    }
+
+    int gateCount() { return instructions.length / 4; }
+
+    private char evaluate(int pc, char[] registers) {
+      int left = registers[instructions[pc + 2]], right = registers[instructions[pc + 3]];
+      return (char)switch (instructions[pc]) {
+        case COPY -> left;
+        case NOT -> ~left;
+        case AND -> left & right;
+        case OR -> left | right;
+        case LSHIFT -> right < BITS ? left << right : 0;
+        default -> right < BITS ? left >>> right : 0;
+      };
+    }
+
+    /* Returns the slot that will hold the value of the connectable; gates get a new slot. */
+    private int compile(Connectable connectable) {
+      if (connectable instanceof Literal literal) {
+        return literalSlots.computeIfAbsent(literal.value, l -> newSlot());
+      }
+      if (connectable instanceof Wire wire) { return allocate(wire); }
+      return compile(connectable, newSlot());
+    }
+
+    /* Emits the instructions that put the value of the connectable in the target slot. */
+    private int compile(Connectable connectable, int target) {
+      if (connectable instanceof NotOp not) {
+        var operand = compile(not.connectable);
+        return emit(NOT, target, operand, operand);
+      }
+      if (connectable instanceof BinaryOp binary) {
+        int left = compile(binary.left), right = compile(binary.right);
+        var opcode = switch (binary.operator) {
+          case AND -> AND;
+          case OR -> OR;
+          case LSHIFT -> LSHIFT;
+          case RSHIFT -> RSHIFT;
+        };
+        return emit(opcode, target, left, right);
+      }
+      var value = compile(connectable);
+      return emit(COPY, target, value, value);
+    }
+
+    private int emit(int opcode, int target, int left, int right) {
+      program.add(opcode).add(target).add(left).add(right);
+      return target;
+    }
+
+    private int newSlot() {
+      size += 1;
+      return size - 1;
+    }
+  }
+
+  /* Keeps the values of a compiled circuit up to date while wires are overridden. Only the
+     gates downstream of a changed value are evaluated again, in program (topological) order,
+     and a gate whose value does not change does not pass the change on. */
+  static class IncrementalCircuit {
+    private final CompiledCircuit circuit;
+    private final char[] registers;
+    private final boolean[] overridden;
+    private final int[] drivers, readerOffsets, readers;
+    private final BitSet dirty = new BitSet();
+
+    IncrementalCircuit(CompiledCircuit circuit) {
+      this.circuit = circuit;
+      registers = circuit.run();
+      overridden = new boolean[circuit.size()];
+      var program = circuit.instructions;
+      drivers = new int[circuit.size()];
+      Arrays.fill(drivers, -1);
+      for (int pc = 0; pc < program.length; pc += 4) { drivers[program[pc + 1]] = pc / 4; }
+      readerOffsets = new int[circuit.size() + 1];
+      for (int pc = 0; pc < program.length; pc += 4) {
+        readerOffsets[program[pc + 2] + 1] += 1;
+        if (program[pc + 3] != program[pc + 2]) { readerOffsets[program[pc + 3] + 1] += 1; }
+      }
+      Arrays.parallelPrefix(readerOffsets, Integer::sum);
+      readers = new int[readerOffsets[circuit.size()]];
+      var filled = Arrays.copyOf(readerOffsets, circuit.size());
+      for (int pc = 0; pc < program.length; pc += 4) {
+        readers[filled[program[pc + 2]]++] = pc / 4;
+        if (program[pc + 3] != program[pc + 2]) { readers[filled[program[pc + 3]]++] = pc / 4; }
+      }
+    }
+
+    int value(Wire wire) { return registers[circuit.slot(wire)]; }
+
+    /* Fixes the given wires to the given values (ignoring whatever drives them) and updates the
+       rest of the circuit; returns the number of gates that were evaluated again. */
+    int override(Map<Wire, Integer> values) {
+      values.forEach((wire, value) -> {
+        var slot = circuit.slot(wire);
+        overridden[slot] = true;
+        if (registers[slot] != (char)value.intValue()) {
+          registers[slot] = (char)value.intValue();
+          markReaders(slot);
+        }
+      });
+      return propagate();
+    }
+
+    /* Lets the given wires be driven by their gates again, undoing override; returns the number
+       of gates that were evaluated again (including the released wires' own gates). */
+    int release(Collection<Wire> wires) {
+      for (var wire: wires) {
+        var slot = circuit.slot(wire);
+        if (!overridden[slot]) { continue; }
+        overridden[slot] = false;
+        if (0 <= drivers[slot]) { dirty.set(drivers[slot]); }
+      }
+      return propagate();
+    }
+
+    /* Evaluates the dirty gates in program order; gates always mark readers later in the
+       program, so one sweep is enough. */
+    private int propagate() {
+      var evaluated = 0;
+      for (var gate = dirty.nextSetBit(0); 0 <= gate; gate = dirty.nextSetBit(gate + 1)) {
+        dirty.clear(gate);
+        var target = circuit.instructions[gate * 4 + 1];
+        if (overridden[target]) { continue; }
+        evaluated += 1;
+        var value = circuit.evaluate(gate * 4, registers);
+        if (value != registers[target]) {
+          registers[target] = value;
+          markReaders(target);
+        }
+      }
+      return evaluated;
+    }
+
+    private void markReaders(int slot) {
+      for (int i = readerOffsets[slot]; i < readerOffsets[slot + 1]; i += 1) { dirty.set(readers[i]); }
+    }
+  }
+
+  /* Evaluates a compiled circuit for up to 64 input vectors at once, bit-sliced: a wire's
+     value is stored as 16 longs, where long i holds bit i of the value for every vector (one
+     vector per bit). AND, OR and NOT then work on all vectors with one operation per bit, and
+     shifts move whole longs around, choosing per vector between shifted and unshifted by the
+     bits of the shift amount. */
+  static class BatchCircuit {
+    static final int LANES = 64, BITS = CompiledCircuit.BITS;
+
+    private final CompiledCircuit circuit;
+    private final long[] planes;
+    /* Per slot, the lanes in which it is overridden and (as planes) the values it is overridden
+       with; filled before each batch and cleared again after it. */
+    private final long[] overrideMask, overridePlanes;
+    private final long[] shiftCurrent = new long[BITS], shiftNext = new long[BITS];
+
+    BatchCircuit(CompiledCircuit circuit) {
+      this.circuit = circuit;
+      planes = new long[circuit.size() * BITS];
+      overrideMask = new long[circuit.size()];
+      overridePlanes = new long[circuit.size() * BITS];
+    }
+
+    /* Runs the circuit once per input vector (a value for some of the wires, overriding what
+       drives them) and returns, per vector, the values of the output wires. */
+    int[][] run(List<Map<Wire, Integer>> vectors, List<Wire> outputs) {
+      var results = new int[vectors.size()][];
+      for (int first = 0; first < vectors.size(); first += LANES) {
+        var batch = vectors.subList(first, Math.min(vectors.size(), first + LANES));
+        runBatch(batch);
+        for (int lane = 0; lane < batch.size(); lane += 1) {
+          var values = new int[outputs.size()];
+          for (int o = 0; o < outputs.size(); o += 1) {
+            values[o] = lane(circuit.slot(outputs.get(o)), lane);
+          }
+          results[first + lane] = values;
+        }
+      }
+      return results;
+    }
+
+    private void runBatch(List<Map<Wire, Integer>> batch) {
+      var overriddenSlots = new ArrayList<Integer>();
+      for (int lane = 0; lane < batch.size(); lane += 1) {
+        for (var entry: batch.get(lane).entrySet()) {
+          var slot = circuit.slot(entry.getKey());
+          if (overrideMask[slot] == 0) { overriddenSlots.add(slot); }
+          overrideMask[slot] |= 1L << lane;
+          for (int bit = 0; bit < BITS; bit += 1) {
+            if ((entry.getValue() >>> bit & 1) != 0) { overridePlanes[slot * BITS + bit] |= 1L << lane; }
+          }
+        }
+      }
+      for (int slot = 0; slot < circuit.size(); slot += 1) {
+        for (int bit = 0; bit < BITS; bit += 1) {
+          planes[slot * BITS + bit] = (circuit.initial[slot] >>> bit & 1) != 0 ? -1L : 0L;
+        }
+      }
+      var program = circuit.instructions;
+      for (int pc = 0; pc < program.length; pc += 4) {
+        var target = program[pc + 1] * BITS;
+        int left = program[pc + 2] * BITS, right = program[pc + 3] * BITS;
+        switch (program[pc]) {
+          case CompiledCircuit.COPY -> System.arraycopy(planes, left, planes, target, BITS);
+          case CompiledCircuit.NOT -> {
+            for (int b = 0; b < BITS; b += 1) { planes[target + b] = ~planes[left + b]; }
+          }
+          case CompiledCircuit.AND -> {
+            for (int b = 0; b < BITS; b += 1) { planes[target + b] = planes[left + b] & planes[right + b]; }
+          }
+          case CompiledCircuit.OR -> {
+            for (int b = 0; b < BITS; b += 1) { planes[target + b] = planes[left + b] | planes[right + b]; }
+          }
+          default -> shift(target, left, right, program[pc] == CompiledCircuit.LSHIFT);
+        }
+        var lanes = overrideMask[program[pc + 1]];
+        if (lanes != 0) {
+          for (int b = 0; b < BITS; b += 1) {
+            planes[target + b] = planes[target + b] & ~lanes | overridePlanes[target + b];
+          }
+        }
+      }
+      for (var slot: overriddenSlots) {
+        overrideMask[slot] = 0;
+        Arrays.fill(overridePlanes, slot * BITS, (slot + 1) * BITS, 0L);
+      }
+    }
+
+    /* A barrel shifter: stage k shifts by 2^k in the vectors where bit k of the amount is set.
+       Amounts of 16 or more shift everything out. */
+    private void shift(int target, int value, int amount, boolean left) {
+      long[] current = shiftCurrent, shifted = shiftNext;
+      System.arraycopy(planes, value, current, 0, BITS);
+      for (int k = 0; k < 4; k += 1) {
+        var select = planes[amount + k];
+        var distance = 1 << k;
+        for (int b = 0; b < BITS; b += 1) {
+          var from = left ? b - distance : b + distance;
+          var moved = 0 <= from && from < BITS ? current[from] : 0L;
+          shifted[b] = moved & select | current[b] & ~select;
+        }
+        var swap = current;
+        current = shifted;
+        shifted = swap;
+      }
+      var tooFar = 0L;
+      for (int b = 4; b < BITS; b += 1) { tooFar |= planes[amount + b]; }
+      for (int b = 0; b < BITS; b += 1) { planes[target + b] = current[b] & ~tooFar; }
+    }
+
+    private int lane(int slot, int lane) {
+      var value = 0;
+      for (int b = 0; b < BITS; b += 1) { value |= (int)(planes[slot * BITS + b] >>> lane & 1) << b; }
+      return value;
+    }
+  }
+
+  /* A circuit parsed straight from the bytes of a memory-mapped file into parallel arrays, one
+     entry per gate: opcode (as in CompiledCircuit), two operands and the target wire. Wire
+     names are interned to dense ids on the fly, in a hash table over the name bytes, so no
+     String is created per reference. An operand is either a wire id, or a literal value v
+     stored as -(v + 1). To evaluate it, the netlist is lowered into a CompiledCircuit. */
+  static class Netlist {
+    private int[] opcodes = new int[1024], lefts = new int[1024], rights = new int[1024];
+    private int[] targets = new int[1024];
+    private int gates;
+
+    private byte[] namePool = new byte[4096];
+    private int[] nameOffsets = new int[1024], nameLengths = new int[1024];
+    private int[] table = new int[2048];
+    private int wires, poolSize;
+
+    private Netlist() { Arrays.fill(table, -1); }
+
+    /* The id of the named wire, or -1 if the netlist does not mention it. */
+    int id(String name) {
+      var bytes = name.getBytes();
+      var buffer = ByteBuffer.wrap(bytes);
+      var mask = table.length - 1;
+      for (int slot = hash(buffer, 0, bytes.length) & mask; ; slot = (slot + 1) & mask) {
+        var id = table[slot];
+        if (id < 0) { return -1; }
+        if (nameEquals(id, buffer, 0, bytes.length)) { return id; }
+      }
+    }
+
+    String name(int id) {
+      return new String(namePool, nameOffsets[id], nameLengths[id]);
+    }
+
+    static Netlist parse(Path path) throws java.io.IOException {
+      try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        var netlist = new Netlist();
+        var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        var starts = new int[5];
+        var ends = new int[5];
+        var tokens = 0;
+        var position = 0;
+        var limit = bytes.limit();
+        while (position < limit) {
+          var b = bytes.get(position);
+          if (b == '\n' || b == '\r') {
+            netlist.addLine(bytes, starts, ends, tokens);
+            tokens = 0;
+            position += 1;
+          } else if (b == ' ') {
+            position += 1;
+          } else {
+            var end = position;
+            while (end < limit && bytes.get(end) > ' ') { end += 1; }
+            if (tokens < 5) {
+              starts[tokens] = position;
+              ends[tokens] = end;
+            }
+            tokens += 1;
+            position = end;
+          }
+        }
+        netlist.addLine(bytes, starts, ends, tokens);
+        return netlist;
+      }
+    }
+
+    /* Lines look like "X -> w", "NOT X -> w" or "X OP Y -> w"; the arrow is at tokens - 2. */
+    private void addLine(ByteBuffer bytes, int[] starts, int[] ends, int tokens) {
+      if (tokens == 0) { return; }
+      var target = intern(bytes, starts[tokens - 1], ends[tokens - 1]);
+      switch (tokens) {
+        case 3 -> {
+          var operand = operand(bytes, starts[0], ends[0]);
+          addGate(CompiledCircuit.COPY, operand, operand, target);
+        }
+        case 4 -> {
+          var operand = operand(bytes, starts[1], ends[1]);
+          addGate(CompiledCircuit.NOT, operand, operand, target);
+        }
+        case 5 -> {
+          var opcode = switch (bytes.get(starts[1])) {
+            case 'A' -> CompiledCircuit.AND;
+            case 'O' -> CompiledCircuit.OR;
+            case 'L' -> CompiledCircuit.LSHIFT;
+            case 'R' -> CompiledCircuit.RSHIFT;
+            default -> throw new IllegalArgumentException("Unknown operator at byte " + starts[1]);
+          };
+          var left = operand(bytes, starts[0], ends[0]);
+          addGate(opcode, left, operand(bytes, starts[2], ends[2]), target);
+        }
+        default -> throw new IllegalArgumentException(
+          "Cannot parse line ending at byte " + ends[tokens - 1]
+        );
+      }
+    }
+
+    private int operand(ByteBuffer bytes, int start, int end) {
+      if (bytes.get(start) < '0' || '9' < bytes.get(start)) { return intern(bytes, start, end); }
+      var value = 0;
+      for (int i = start; i < end; i += 1) { value = value * 10 + bytes.get(i) - '0'; }
+      return -(value + 1);
+    }
+
+    private void addGate(int opcode, int left, int right, int target) {
+      if (gates == opcodes.length) {
+        opcodes = Arrays.copyOf(opcodes, gates * 2);
+        lefts = Arrays.copyOf(lefts, gates * 2);
+        rights = Arrays.copyOf(rights, gates * 2);
+        targets = Arrays.copyOf(targets, gates * 2);
+      }
+      opcodes[gates] = opcode;
+      lefts[gates] = left;
+      rights[gates] = right;
+      targets[gates] = target;
+      gates += 1;
+    }
+
+    private int intern(ByteBuffer bytes, int start, int end) {
+      var mask = table.length - 1;
+      for (int slot = hash(bytes, start, end) & mask; ; slot = (slot + 1) & mask) {
+        var id = table[slot];
+        if (id < 0) {
+          table[slot] = addName(bytes, start, end);
+          if (table.length < 2 * wires) { growTable(); }
+          return wires - 1;
+        }
+        if (nameEquals(id, bytes, start, end)) { return id; }
+      }
+    }
+
+    private static int hash(ByteBuffer bytes, int start, int end) {
+      var hash = 0;
+      for (int i = start; i < end; i += 1) { hash = 31 * hash + bytes.get(i); }
+      return hash ^ hash >>> 16;
+    }
+
+    private boolean nameEquals(int id, ByteBuffer bytes, int start, int end) {
+      if (nameLengths[id] != end - start) { return false; }
+      for (int i = 0; i < end - start; i += 1) {
+        if (namePool[nameOffsets[id] + i] != bytes.get(start + i)) { return false; }
+      }
+      return true;
+    }
+
+    private int addName(ByteBuffer bytes, int start, int end) {
+      if (wires == nameOffsets.length) {
+        nameOffsets = Arrays.copyOf(nameOffsets, wires * 2);
+        nameLengths = Arrays.copyOf(nameLengths, wires * 2);
+      }
+      while (namePool.length < poolSize + end - start) {
+        namePool = Arrays.copyOf(namePool, namePool.length * 2);
+      }
+      bytes.get(start, namePool, poolSize, end - start);
+      nameOffsets[wires] = poolSize;
+      nameLengths[wires] = end - start;
+      poolSize += end - start;
+      wires += 1;
+      return wires - 1;
+    }
+
+    private void growTable() {
+      table = new int[table.length * 2];
+      Arrays.fill(table, -1);
+      var mask = table.length - 1;
+      for (int id = 0; id < wires; id += 1) {
+        var start = nameOffsets[id];
+        var slot = hash(ByteBuffer.wrap(namePool), start, start + nameLengths[id]) & mask;
+        while (0 <= table[slot]) { slot = (slot + 1) & mask; }
+        table[slot] = id;
+      }
+    }
+
+    /* Lowers the netlist into a CompiledCircuit: the gates are put in topological order
+       (Kahn's algorithm over the operand arrays), wire ids are used as slots as they are, and
+       every distinct literal gets a slot after them. Returns nothing if there is a cycle (or a
+       wire that is never driven). */
+    Optional<CompiledCircuit> compile() {
+      var offsets = new int[wires + 1];
+      var pending = new int[gates];
+      for (int g = 0; g < gates; g += 1) {
+        if (0 <= lefts[g]) { offsets[lefts[g] + 1] += 1; pending[g] += 1; }
+        if (0 <= rights[g] && rights[g] != lefts[g]) { offsets[rights[g] + 1] += 1; pending[g] += 1; }
+      }
+      Arrays.parallelPrefix(offsets, Integer::sum);
+      var readers = new int[offsets[wires]];
+      var filled = Arrays.copyOf(offsets, wires);
+      for (int g = 0; g < gates; g += 1) {
+        if (0 <= lefts[g]) { readers[filled[lefts[g]]++] = g; }
+        if (0 <= rights[g] && rights[g] != lefts[g]) { readers[filled[rights[g]]++] = g; }
+      }
+
+      var queue = new int[gates];
+      int head = 0, tail = 0;
+      for (int g = 0; g < gates; g += 1) {
+        if (pending[g] == 0) { queue[tail++] = g; }
+      }
+      while (head < tail) {
+        var wire = targets[queue[head++]];
+        for (int i = offsets[wire]; i < offsets[wire + 1]; i += 1) {
+          var reader = readers[i];
+          pending[reader] -= 1;
+          if (pending[reader] == 0) { queue[tail++] = reader; }
+        }
+      }
+      if (tail < gates) { return Optional.empty(); }
+
+      var literalSlots = new HashMap<Integer, Integer>();
+      var instructions = new int[gates * 4];
+      for (int i = 0; i < gates; i += 1) {
+        var g = queue[i];
+        instructions[i * 4] = opcodes[g];
+        instructions[i * 4 + 1] = targets[g];
+        instructions[i * 4 + 2] = slot(lefts[g], literalSlots);
+        instructions[i * 4 + 3] = slot(rights[g], literalSlots);
+      }
+      var initial = new char[wires + literalSlots.size()];
+      literalSlots.forEach((literal, slot) -> initial[slot] = (char)literal.intValue());
+      var slots = new HashMap<Wire, Integer>();
+      for (int id = 0; id < wires; id += 1) { slots.put(new Wire(name(id)), id); }
+      return Optional.of(new CompiledCircuit(slots, instructions, initial));
+    }
+
+    private int slot(int operand, Map<Integer, Integer> literalSlots) {
+      if (0 <= operand) { return operand; }
+      return literalSlots.computeIfAbsent(-(operand + 1), literal -> wires + literalSlots.size());
+    }
   }
 
   record Connection(Connectable lhs, Wire rhs) { }
@@ -101,7 +814,22 @@ public class Program {
       return getWireValue.apply(this);
     }
   }
-  record BinaryOp(Connectable left, IntBinaryOperator operator, Connectable right) implements Connectable {
+  enum Operator implements IntBinaryOperator {
+    AND, OR, LSHIFT, RSHIFT;
+
+    /* Signals are 16 bits wide, so shifting by 16 or more gives 0 (rather than Java's shift
+       by the amount mod 32), as in CompiledCircuit and BatchCircuit. */
+    public int applyAsInt(int leftVal, int rightVal) {
+      return switch (this) {
+        case AND -> leftVal & rightVal;
+        case OR -> leftVal | rightVal;
+        case LSHIFT -> rightVal < CompiledCircuit.BITS ? leftVal << rightVal : 0;
+        case RSHIFT -> rightVal < CompiledCircuit.BITS ? leftVal >>> rightVal : 0;
+      };
+    }
+  }
+
+  record BinaryOp(Connectable left, Operator operator, Connectable right) implements Connectable {
     public Stream<Wire> getWires() { return Stream.concat(left.getWires(), right.getWires()); }
     public Integer calculateValue(Function<Wire, Integer> getWireValue) {
       return operator.applyAsInt(left.calculateValue(getWireValue), right.calculateValue(getWireValue));
@@ -150,14 +878,9 @@ public class Program {
       return Optional.empty();
     }
 
-    static Optional<IntBinaryOperator> getOperator(String s) {
-      return Optional.<IntBinaryOperator>ofNullable(switch (s) {
-        case "AND" -> (leftVal, rightVal) -> leftVal & rightVal;
-        case "OR" -> (leftVal, rightVal) -> leftVal | rightVal;
-        case "LSHIFT" -> (leftVal, rightVal) -> leftVal << rightVal;
-        case "RSHIFT" -> (leftVal, rightVal) -> leftVal >>> rightVal;
-        default -> null;
-      });
+    static Optional<Operator> getOperator(String s) {
+      try { return Optional.of(Operator.valueOf(s)); }
+      catch (IllegalArgumentException i) { return Optional.empty(); }
     }
 
     static Optional<Integer> tryParse(String s) {
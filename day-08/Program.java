@@ -1,3 +1,5 @@
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.*;
 import java.util.stream.*;
@@ -16,6 +18,12 @@ public class Program {
 
     System.out.println("Part 2:");
     System.out.println(encodingOverhead(lines.stream().map(DoubleEncoder::encode)));
+
+    var lengths = EscapeScanner.scan(Path.of("../input/day08.txt"));
+    System.out.println("Part 1 (scanner):");
+    System.out.println(lengths.code - lengths.decoded);
+    System.out.println("Part 2 (scanner):");
+    System.out.println(lengths.encoded - lengths.code);
   }
 
   static long encodingOverhead(Stream<String> entries) {
@@ -44,4 +52,94 @@ public class Program {
       );
     }
   }
-}
\ No newline at end of file
+
+  record Lengths(long code, long decoded, long encoded) {
+    Lengths add(Lengths other) {
+      return new Lengths(code + other.code, decoded + other.decoded, encoded + other.encoded);
+    }
+  }
+
+  /* Measures the code, decoded (in memory) and re-encoded lengths of all entries straight from
+     the bytes, without building any strings. Decoding follows the escapes that ListEntryParser
+     recognizes between the outer quotes; encoding adds two new quotes and one backslash for
+     every quote or backslash. The file is split at line boundaries into chunks that are scanned in
+     parallel. */
+  static class EscapeScanner {
+    static final long CHUNK_SIZE = 1 << 24;
+
+    static Lengths scan(Path path) throws java.io.IOException {
+      try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        var boundaries = lineBoundaries(channel);
+        return IntStream.range(0, boundaries.length - 1).parallel()
+          .mapToObj(i -> scan(map(channel, boundaries[i], boundaries[i + 1])))
+          .reduce(new Lengths(0, 0, 0), Lengths::add);
+      }
+    }
+
+    static Lengths scan(ByteBuffer bytes) {
+      long code = 0, decoded = 0, encoded = 0;
+      var limit = bytes.limit();
+      var i = 0;
+      while (i < limit) {
+        var end = i;
+        while (end < limit && bytes.get(end) != '\n' && bytes.get(end) != '\r') { end += 1; }
+        if (i < end) {
+          code += end - i;
+          encoded += end - i + 2;
+          for (int at = i; at < end; at += 1) {
+            var b = bytes.get(at);
+            if (b == '"' || b == '\\') { encoded += 1; }
+          }
+          var last = end - 1;
+          for (int at = i + 1; at < last; at += 1) {
+            decoded += 1;
+            if (bytes.get(at) != '\\' || last <= at + 1) { continue; }
+            var next = bytes.get(at + 1);
+            if (next == '\\' || next == '"') {
+              at += 1;
+            } else if (next == 'x' && at + 3 < last && isHex(bytes.get(at + 2)) && isHex(bytes.get(at + 3))) {
+              at += 3;
+            }
+          }
+        }
+        i = end + 1;
+      }
+      return new Lengths(code, decoded, encoded);
+    }
+
+    static boolean isHex(byte b) {
+      return ('0' <= b && b <= '9') || ('a' <= b && b <= 'f');
+    }
+
+    /* Splits the file into chunks of about CHUNK_SIZE bytes, each ending right after a newline
+       (or at the end of the file). */
+    static long[] lineBoundaries(FileChannel channel) throws java.io.IOException {
+      var size = channel.size();
+      var boundaries = LongStream.builder().add(0);
+      var probe = ByteBuffer.allocate(4096);
+      var position = CHUNK_SIZE;
+      while (position < size) {
+        probe.clear();
+        channel.read(probe, position);
+        probe.flip();
+        var newline = -1;
+        while (probe.hasRemaining() && newline < 0) {
+          if (probe.get() == '\n') { newline = probe.position(); }
+        }
+        if (newline < 0) {
+          position += probe.limit();
+          continue;
+        }
+        boundaries.add(position + newline);
+        position += newline + CHUNK_SIZE;
+      }
+      boundaries.add(size);
+      return boundaries.build().distinct().toArray();
+    }
+
+    static ByteBuffer map(FileChannel channel, long from, long to) {
+      try { return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from); }
+      catch (java.io.IOException x) { throw new java.io.UncheckedIOException(x); }
+    }
+  }
+}
@@ -10,9 +10,11 @@ import static java.lang.Math.*;
 public class Program {
   public static void main(String... args) throws java.io.IOException {
     var lines = Files.readAllLines(Path.of("../input/day09.txt"));
-    var distances = lines.stream()
+    var parsed = lines.stream()
       .map(DistanceParser::parse)
       .map(Optional::orElseThrow)
+      .collect(toList());
+    var distances = parsed.stream()
       .flatMap(d -> Stream.of(d, d.reverse()))
       .collect(toMap(d -> new Leg(d.from, d.to), d -> d.distance));
     System.out.println("Part 1:");
@@ -23,6 +25,414 @@ public class Program {
     System.out.println(journeyLengths.get(0));
     System.out.println("Part 2:");
     System.out.println(last(journeyLengths).orElseThrow());
+
+    var cities = Cities.of(parsed);
+    System.out.println("Part 1 (Held-Karp):");
+    System.out.println(bestPath(cities.distances, false));
+    System.out.println("Part 2 (Held-Karp):");
+    System.out.println(bestPath(cities.distances, true));
+
+    var started = System.nanoTime();
+    var stats = allRoutes(cities.distances);
+    var seconds = (System.nanoTime() - started) / 1e9;
+    System.out.println("Part 1 (enumerated):");
+    System.out.println(stats.shortest);
+    System.out.println("Part 2 (enumerated):");
+    System.out.println(stats.longest);
+    var permutations = factorial(cities.distances.length);
+    System.out.printf(
+      "(%d routes of %d permutations, %.0f permutations/s)%n",
+      stats.routes, permutations, permutations / seconds
+    );
+
+    System.out.println("Part 1 (heuristic):");
+    System.out.println(heuristicPath(cities.distances, false, 200).length);
+    System.out.println("Part 2 (heuristic):");
+    System.out.println(heuristicPath(cities.distances, true, 200).length);
+  }
+
+  record Improvement(long millis, int length) { }
+
+  record HeuristicResult(int[] route, int length, List<Improvement> history) { }
+
+  /* For maps that are too large to solve exactly: one worker per core keeps building a route
+     (randomized nearest neighbour) and improving it (2-opt and Or-opt) until the budget is
+     spent; a route that is still being improved at that point is cut short. The best route so
+     far is shared; every time it improves, the time and length are added to the history. If
+     every route found uses a missing road, the result has no route and a length of NO_ROAD. */
+  static HeuristicResult heuristicPath(int[][] distances, boolean longest, long budgetMillis) {
+    if (distances.length == 0) { return new HeuristicResult(new int[0], 0, List.of()); }
+    var started = System.nanoTime();
+    var deadline = started + budgetMillis * 1_000_000;
+    var search = new RouteSearch(distances, longest);
+    var history = new ArrayList<Improvement>();
+    var best = new int[][] { null };
+    IntStream.range(0, Runtime.getRuntime().availableProcessors()).parallel().forEach(worker -> {
+      var random = new SplittableRandom(worker);
+      do {
+        var route = search.improve(search.nearestNeighbour(random), deadline);
+        synchronized (history) {
+          if (best[0] == null || search.cost(route) < search.cost(best[0])) {
+            best[0] = route;
+            if (search.isComplete(route)) {
+              var millis = (System.nanoTime() - started) / 1_000_000;
+              history.add(new Improvement(millis, search.length(route)));
+            }
+          }
+        }
+      } while (System.nanoTime() < deadline);
+    });
+    if (!search.isComplete(best[0])) { return new HeuristicResult(null, Cities.NO_ROAD, history); }
+    return new HeuristicResult(best[0], search.length(best[0]), history);
+  }
+
+  /* Local search for open routes. Costs are distances, negated when looking for the longest
+     route, so that lower is always better; a missing road costs NO_ROAD_COST. Moves are only
+     tried towards each city's nearest few cities (by cost), the candidate lists. */
+  static class RouteSearch {
+    static final long NO_ROAD_COST = 1L << 40;
+    static final int CANDIDATES = 8;
+
+    private final int[][] distances;
+    private final boolean longest;
+    private final int n;
+    private final int[][] candidates;
+
+    RouteSearch(int[][] distances, boolean longest) {
+      this.distances = distances;
+      this.longest = longest;
+      n = distances.length;
+      candidates = IntStream.range(0, n).parallel().mapToObj(this::nearest).toArray(int[][]::new);
+    }
+
+    /* The CANDIDATES cheapest cities to go to from a city, cheapest first, by insertion into a
+       short sorted array. */
+    private int[] nearest(int from) {
+      var nearest = new int[Math.min(CANDIDATES, n - 1)];
+      var found = 0;
+      for (int to = 0; to < n && 0 < nearest.length; to += 1) {
+        if (to == from) { continue; }
+        if (found == nearest.length && cost(from, nearest[found - 1]) <= cost(from, to)) { continue; }
+        var i = found < nearest.length ? found++ : found - 1;
+        for (; 0 < i && cost(from, to) < cost(from, nearest[i - 1]); i -= 1) {
+          nearest[i] = nearest[i - 1];
+        }
+        nearest[i] = to;
+      }
+      return nearest;
+    }
+
+    /* The cost of going from one city to another; -1 stands for the open end of the route. */
+    long cost(int from, int to) {
+      if (from < 0 || to < 0) { return 0; }
+      var distance = distances[from][to];
+      if (distance == Cities.NO_ROAD) { return NO_ROAD_COST; }
+      return longest ? -distance : distance;
+    }
+
+    long cost(int[] route) {
+      long total = 0;
+      for (int i = 1; i < route.length; i += 1) { total += cost(route[i - 1], route[i]); }
+      return total;
+    }
+
+    boolean isComplete(int[] route) {
+      for (int i = 1; i < route.length; i += 1) {
+        if (distances[route[i - 1]][route[i]] == Cities.NO_ROAD) { return false; }
+      }
+      return true;
+    }
+
+    int length(int[] route) {
+      var total = 0;
+      for (int i = 1; i < route.length; i += 1) { total += distances[route[i - 1]][route[i]]; }
+      return total;
+    }
+
+    /* Starts in a random city and mostly goes to the cheapest unvisited city next, but
+       sometimes to the second cheapest, so restarts explore different routes. */
+    int[] nearestNeighbour(SplittableRandom random) {
+      var route = new int[n];
+      var visited = new boolean[n];
+      route[0] = random.nextInt(n);
+      visited[route[0]] = true;
+      for (int i = 1; i < n; i += 1) {
+        int from = route[i - 1], first = -1, second = -1;
+        for (int to = 0; to < n; to += 1) {
+          if (visited[to]) { continue; }
+          if (first < 0 || cost(from, to) < cost(from, first)) {
+            second = first;
+            first = to;
+          } else if (second < 0 || cost(from, to) < cost(from, second)) {
+            second = to;
+          }
+        }
+        route[i] = 0 <= second && random.nextInt(4) == 0 ? second : first;
+        visited[route[i]] = true;
+      }
+      return route;
+    }
+
+    /* Applies improving moves until there are none left, or until the deadline (a
+       System.nanoTime() value) has passed. */
+    int[] improve(int[] route, long deadline) {
+      var position = new int[n];
+      for (int i = 0; i < n; i += 1) { position[route[i]] = i; }
+      while (System.nanoTime() < deadline && (twoOpt(route, position) || orOpt(route, position))) { }
+      return route;
+    }
+
+    /* Tries to make each city adjacent to one of its candidates by reversing the part of the
+       route in between; applies the first move that lowers the cost. */
+    private boolean twoOpt(int[] route, int[] position) {
+      for (int i = 0; i < n; i += 1) {
+        var a = route[i];
+        for (var b: candidates[a]) {
+          var j = position[b];
+          if (i + 1 < j) {
+            var after = j + 1 < n ? route[j + 1] : -1;
+            var delta = cost(a, b) + cost(route[i + 1], after) - cost(a, route[i + 1]) - cost(b, after);
+            if (delta < 0) {
+              reverse(route, position, i + 1, j);
+              return true;
+            }
+          } else if (j < i - 1) {
+            var before = 0 < j ? route[j - 1] : -1;
+            var delta = cost(before, route[i - 1]) + cost(b, a)
+              - cost(before, b) - cost(route[i - 1], a);
+            if (delta < 0) {
+              reverse(route, position, j, i - 1);
+              return true;
+            }
+          }
+        }
+      }
+      return false;
+    }
+
+    /* Tries to move a run of one to three cities next to a candidate of its first or last
+       city, in either direction; applies the first move that lowers the cost. */
+    private boolean orOpt(int[] route, int[] position) {
+      for (int length = 1; length <= 3; length += 1) {
+        for (int i = 0; i + length <= n; i += 1) {
+          int first = route[i], last = route[i + length - 1];
+          var before = 0 < i ? route[i - 1] : -1;
+          var after = i + length < n ? route[i + length] : -1;
+          var removed = cost(before, first) + cost(last, after) - cost(before, after);
+          for (int e = 0; e < (length == 1 ? 1 : 2); e += 1) {
+            for (var b: candidates[e == 0 ? first : last]) {
+              for (int gap = position[b]; gap <= position[b] + 1; gap += 1) {
+                if (i <= gap && gap <= i + length) { continue; }
+                var u = 0 < gap ? route[gap - 1] : -1;
+                var v = gap < n ? route[gap] : -1;
+                var forward = cost(u, first) + cost(last, v) - cost(u, v);
+                var backward = cost(u, last) + cost(first, v) - cost(u, v);
+                if (Math.min(forward, backward) < removed) {
+                  move(route, position, i, length, gap, backward < forward);
+                  return true;
+                }
+              }
+            }
+          }
+        }
+      }
+      return false;
+    }
+
+    private static void reverse(int[] route, int[] position, int from, int to) {
+      for (; from < to; from += 1, to -= 1) {
+        swap(route, from, to);
+        position[route[from]] = from;
+        position[route[to]] = to;
+      }
+    }
+
+    /* Moves the run route[i..i+length) into the gap before position gap (of the original
+       route), reversed if asked to. The run and the cities between it and the gap swap places,
+       which is a rotation of that stretch done with three reversals (any reversal done twice
+       cancels out), so only that stretch and its positions change. */
+    private void move(int[] route, int[] position, int i, int length, int gap, boolean reversed) {
+      var end = i + length;
+      if (end < gap) {
+        if (!reversed) { reverse(route, position, i, end - 1); }
+        reverse(route, position, end, gap - 1);
+        reverse(route, position, i, gap - 1);
+      } else {
+        reverse(route, position, gap, i - 1);
+        if (!reversed) { reverse(route, position, i, end - 1); }
+        reverse(route, position, gap, end - 1);
+      }
+    }
+  }
+
+  /* Summary of a set of routes: how many there are, the shortest and longest length, and how
+     many routes there are per range of lengths: histogram[i] counts the routes with a length
+     from i * bucketWidth up to (i + 1) * bucketWidth. There are at most HISTOGRAM_BUCKETS
+     buckets, however long the roads are. Routes over a missing road are not counted. */
+  record RouteStats(long routes, int shortest, int longest, int bucketWidth, long[] histogram) {
+    static final int HISTOGRAM_BUCKETS = 1024;
+
+    static RouteStats empty(int maxLength) {
+      var bucketWidth = maxLength / HISTOGRAM_BUCKETS + 1;
+      return new RouteStats(
+        0, Integer.MAX_VALUE, Integer.MIN_VALUE, bucketWidth, new long[maxLength / bucketWidth + 1]
+      );
+    }
+
+    RouteStats add(RouteStats other) {
+      var combined = histogram.clone();
+      for (int i = 0; i < combined.length; i += 1) { combined[i] += other.histogram[i]; }
+      return new RouteStats(
+        routes + other.routes, Math.min(shortest, other.shortest), Math.max(longest, other.longest),
+        bucketWidth, combined
+      );
+    }
+  }
+
+  static long factorial(int n) {
+    return LongStream.rangeClosed(1, n).reduce(1, Math::multiplyExact);
+  }
+
+  /* Goes through every route without storing any of them. The n! permutations are split into
+     ranges of consecutive ranks that are walked in parallel: each range starts by unranking
+     its first permutation and then steps to the next one in lexicographic order. A step only
+     changes the tail of the route, so only the running lengths of that tail are updated. */
+  static RouteStats allRoutes(int[][] distances) {
+    var n = distances.length;
+    var total = factorial(n);
+    var longestRoad = Arrays.stream(distances).flatMapToInt(Arrays::stream).max().orElse(0);
+    var maxLength = (long)Math.max(0, n - 1) * longestRoad;
+    if (Integer.MAX_VALUE < maxLength) {
+      throw new IllegalArgumentException("Routes could be too long to add up in an int: " + maxLength);
+    }
+    var ranges = Math.min(total, 64L * Runtime.getRuntime().availableProcessors());
+    var rangeSize = (total + ranges - 1) / ranges;
+    return LongStream.range(0, ranges).parallel()
+      .mapToObj(r -> {
+        var from = r * rangeSize;
+        return routesInRange(distances, from, Math.min(total, from + rangeSize), (int)maxLength);
+      })
+      .reduce(RouteStats.empty((int)maxLength), RouteStats::add);
+  }
+
+  static RouteStats routesInRange(int[][] distances, long from, long to, int maxLength) {
+    var n = distances.length;
+    var stats = RouteStats.empty(maxLength);
+    if (to <= from) { return stats; }
+    var route = unrank(n, from);
+    var lengths = new int[n];
+    int shortest = stats.shortest, longest = stats.longest;
+    long routes = 0;
+    var changedFrom = 1;
+    for (var rank = from; rank < to; rank += 1) {
+      for (int i = Math.max(1, changedFrom); i < n; i += 1) {
+        var road = distances[route[i - 1]][route[i]];
+        lengths[i] = lengths[i - 1] < 0 || road == Cities.NO_ROAD ? -1 : lengths[i - 1] + road;
+      }
+      var length = n == 0 ? 0 : lengths[n - 1];
+      if (0 <= length) {
+        routes += 1;
+        shortest = Math.min(shortest, length);
+        longest = Math.max(longest, length);
+        stats.histogram[length / stats.bucketWidth] += 1;
+      }
+      changedFrom = nextPermutation(route);
+    }
+    return new RouteStats(routes, shortest, longest, stats.bucketWidth, stats.histogram);
+  }
+
+  /* The permutation of 0..n-1 with the given lexicographic rank (factorial number system). */
+  static int[] unrank(int n, long rank) {
+    var available = IntStream.range(0, n).boxed().collect(toCollection(ArrayList::new));
+    var permutation = new int[n];
+    var factorial = LongStream.rangeClosed(1, Math.max(1, n - 1)).reduce(1, Math::multiplyExact);
+    for (int i = 0; i < n; i += 1) {
+      permutation[i] = available.remove((int)(rank / factorial));
+      rank %= factorial;
+      if (i < n - 1) { factorial /= Math.max(1, n - 1 - i); }
+    }
+    return permutation;
+  }
+
+  /* Rearranges the permutation into the next one in lexicographic order, and returns the first
+     position that changed (or the length, if this was the last permutation). */
+  static int nextPermutation(int[] permutation) {
+    var i = permutation.length - 2;
+    while (0 <= i && permutation[i] >= permutation[i + 1]) { i -= 1; }
+    if (i < 0) { return permutation.length; }
+    var j = permutation.length - 1;
+    while (permutation[j] <= permutation[i]) { j -= 1; }
+    swap(permutation, i, j);
+    for (int left = i + 1, right = permutation.length - 1; left < right; left += 1, right -= 1) {
+      swap(permutation, left, right);
+    }
+    return i;
+  }
+
+  static void swap(int[] values, int i, int j) {
+    var value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+
+  /* The locations numbered in order of appearance, with the distances in a matrix; a missing
+     distance is NO_ROAD. */
+  record Cities(List<String> names, int[][] distances) {
+    static final int NO_ROAD = -1;
+
+    static Cities of(List<Distance> distances) {
+      var ids = new LinkedHashMap<String, Integer>();
+      for (var d: distances) {
+        ids.putIfAbsent(d.from, ids.size());
+        ids.putIfAbsent(d.to, ids.size());
+      }
+      var matrix = new int[ids.size()][ids.size()];
+      for (var row: matrix) { Arrays.fill(row, NO_ROAD); }
+      for (var d: distances) {
+        matrix[ids.get(d.from)][ids.get(d.to)] = d.distance;
+        matrix[ids.get(d.to)][ids.get(d.from)] = d.distance;
+      }
+      return new Cities(new ArrayList<>(ids.keySet()), matrix);
+    }
+  }
+
+  /* Held-Karp: best[set * n + last] is the length of the best route that visits exactly the
+     cities in the set (a bit mask) and ends in last. A set's values only depend on the sets
+     with one city less, so all sets of the same size are computed in parallel, size by size.
+     The table takes 2^n * n ints, which is about 3.4 GB for 25 cities; from 27 cities on it no
+     longer fits in an array, and the map is rejected. Returns the length of the shortest (or
+     longest) route visiting every city once, or NO_ROAD if there is none. */
+  static int bestPath(int[][] distances, boolean longest) {
+    var n = distances.length;
+    if (n == 0) { return 0; }
+    if (26 < n) {
+      throw new IllegalArgumentException("Too many cities for Held-Karp (2^n * n entries): " + n);
+    }
+    var unreached = longest ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+    var best = new int[(1 << n) * n];
+    Arrays.fill(best, unreached);
+    for (int city = 0; city < n; city += 1) { best[(1 << city) * n + city] = 0; }
+    for (int size = 2; size <= n; size += 1) {
+      var setSize = size;
+      var sets = IntStream.range(0, 1 << n).parallel().filter(set -> Integer.bitCount(set) == setSize);
+      sets.forEach(set -> {
+        for (int last = 0; last < n; last += 1) {
+          if ((set & 1 << last) == 0) { continue; }
+          var previousSet = set & ~(1 << last);
+          var value = unreached;
+          for (int previous = 0; previous < n; previous += 1) {
+            var length = best[previousSet * n + previous];
+            var road = distances[previous][last];
+            if (length == unreached || road == Cities.NO_ROAD) { continue; }
+            value = longest ? Math.max(value, length + road) : Math.min(value, length + road);
+          }
+          best[set * n + last] = value;
+        }
+      });
+    }
+    var all = (1 << n) - 1;
+    var result = IntStream.range(0, n).map(last -> best[all * n + last]).filter(v -> v != unreached);
+    return (longest ? result.max() : result.min()).orElse(Cities.NO_ROAD);
   }
 
   static <E> Optional<E> last(List<E> list) {
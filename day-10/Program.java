@@ -1,3 +1,4 @@
+import java.math.BigInteger;
 import java.nio.file.*;
 import java.util.*;
 import java.util.stream.*;
@@ -15,9 +16,15 @@ public class Program {
     System.out.println(part1.length());
     System.out.println("Part 2:");
     System.out.println(Stream.iterate(part1, Program::lookAndSay).skip(10).findFirst().orElseThrow().length());
+
+    var decay = AudioactiveDecay.of(input.strip());
+    System.out.printf("Part 1 (elements, %d):%n", decay.elementCount());
+    System.out.println(decay.length(40));
+    System.out.println("Part 2 (elements):");
+    System.out.println(decay.length(50));
   }
 
-  private static String lookAndSay(String input) {
+  static String lookAndSay(String input) {
     return groups(input).map(g -> g.length() + g.substring(0, 1)).collect(joining());
   }
 
@@ -46,4 +53,159 @@ class StringGroupIterator implements Iterator<String> {
     } while(index < chars.length && chars[index] == current);
     return group.toString();
   }
-}
\ No newline at end of file
+}
+
+/* Conway's audioactive decay: after a few iterations every look-and-say string is a
+   concatenation of elements (92 of them for strings of 1s, 2s and 3s), and each element
+   independently decays into a fixed list of elements. So only the number of each element
+   matters, and one iteration is a multiplication by the decay matrix.
+
+   The elements are not hard-coded but found by splitting: starting from the input, every
+   string is cut wherever the two halves can never interact again, and the pieces' own
+   descendants are split in turn until no new pieces appear. For strings of 1s, 2s and 3s this
+   finds (a subset of) Conway's elements; other digits add his transuranic ones. */
+class AudioactiveDecay {
+  /* How far ahead a split is checked, and how many leading characters of the right-hand part
+     are followed to do so. */
+  static final int HORIZON = 64;
+  static final int WINDOW = 64;
+
+  private final List<String> elements = new ArrayList<>();
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final List<int[]> decaysInto = new ArrayList<>();
+  private final long[] initial;
+
+  private AudioactiveDecay(String input) {
+    var seed = split(input);
+    for (int element = 0; element < elements.size(); element += 1) {
+      decaysInto.add(split(Program.lookAndSay(elements.get(element))));
+    }
+    initial = new long[elements.size()];
+    for (var element: seed) { initial[element] += 1; }
+  }
+
+  static AudioactiveDecay of(String input) { return new AudioactiveDecay(input); }
+
+  int elementCount() { return elements.size(); }
+
+  /* Steps the counts one iteration at a time; Math.*Exact makes an overflow an error instead
+     of a wrong answer, after which length(BigInteger) still works. */
+  long length(int iterations) {
+    var counts = initial;
+    for (int i = 0; i < iterations; i += 1) { counts = step(counts); }
+    long total = 0;
+    for (int element = 0; element < counts.length; element += 1) {
+      total = Math.addExact(total, Math.multiplyExact(counts[element], elements.get(element).length()));
+    }
+    return total;
+  }
+
+  long[] step(long[] counts) {
+    var next = new long[counts.length];
+    for (int element = 0; element < counts.length; element += 1) {
+      if (counts[element] == 0) { continue; }
+      for (var product: decaysInto.get(element)) {
+        next[product] = Math.addExact(next[product], counts[element]);
+      }
+    }
+    return next;
+  }
+
+  /* The length after any number of iterations, by raising the decay matrix to that power with
+     repeated squaring: O(log n) multiplications of an elementCount() square matrix (whose
+     entries do grow with n, as the length itself has about 0.115 n decimal digits). */
+  BigInteger length(BigInteger iterations) {
+    var n = elements.size();
+    var vector = Arrays.stream(initial).mapToObj(BigInteger::valueOf).toArray(BigInteger[]::new);
+    var power = matrix();
+    for (int bit = 0; bit < iterations.bitLength(); bit += 1) {
+      if (iterations.testBit(bit)) { vector = multiply(vector, power); }
+      if (bit + 1 < iterations.bitLength()) { power = multiply(power, power); }
+    }
+    var total = BigInteger.ZERO;
+    for (int element = 0; element < n; element += 1) {
+      total = total.add(vector[element].multiply(BigInteger.valueOf(elements.get(element).length())));
+    }
+    return total;
+  }
+
+  /* matrix[i][j] is the number of j's that one i decays into. */
+  private BigInteger[][] matrix() {
+    var n = elements.size();
+    var matrix = new BigInteger[n][n];
+    for (var row: matrix) { Arrays.fill(row, BigInteger.ZERO); }
+    for (int element = 0; element < n; element += 1) {
+      for (var product: decaysInto.get(element)) {
+        matrix[element][product] = matrix[element][product].add(BigInteger.ONE);
+      }
+    }
+    return matrix;
+  }
+
+  private static BigInteger[] multiply(BigInteger[] vector, BigInteger[][] matrix) {
+    var result = new BigInteger[vector.length];
+    Arrays.fill(result, BigInteger.ZERO);
+    for (int i = 0; i < vector.length; i += 1) {
+      if (vector[i].signum() == 0) { continue; }
+      for (int j = 0; j < vector.length; j += 1) {
+        if (matrix[i][j].signum() != 0) { result[j] = result[j].add(vector[i].multiply(matrix[i][j])); }
+      }
+    }
+    return result;
+  }
+
+  /* Rows are independent, so the squarings use all cores. */
+  private static BigInteger[][] multiply(BigInteger[][] left, BigInteger[][] right) {
+    return IntStream.range(0, left.length).parallel()
+      .mapToObj(i -> multiply(left[i], right))
+      .toArray(BigInteger[][]::new);
+  }
+
+  /* Cuts the string into pieces at every safe split point and returns their ids, registering
+     pieces not seen before. */
+  private int[] split(String s) {
+    var pieces = new ArrayList<Integer>();
+    var start = 0;
+    for (int i = 1; i < s.length(); i += 1) {
+      if (s.charAt(i - 1) != s.charAt(i) && splitsBefore(s.charAt(i - 1), s.substring(i))) {
+        pieces.add(id(s.substring(start, i)));
+        start = i;
+      }
+    }
+    pieces.add(id(s.substring(start)));
+    return pieces.stream().mapToInt(p -> p).toArray();
+  }
+
+  private int id(String element) {
+    return ids.computeIfAbsent(element, e -> {
+      elements.add(e);
+      return elements.size() - 1;
+    });
+  }
+
+  /* A look-and-say string keeps its last digit forever, so L and R evolve independently as
+     long as R's descendants never start with that digit (otherwise two runs merge). Only the
+     start of R matters for that: a window of its leading runs is followed for HORIZON
+     iterations, dropping the last run each time as it may continue past the window. If the
+     window ever runs dry, the split is refused, which is always safe. */
+  private static boolean splitsBefore(char last, String right) {
+    var window = right.substring(0, Math.min(right.length(), WINDOW));
+    var complete = window.length() == right.length();
+    for (int t = 0; t < HORIZON; t += 1) {
+      if (window.isEmpty()) { return false; }
+      if (window.charAt(0) == last) { return false; }
+      var next = new StringBuilder();
+      var i = 0;
+      while (i < window.length()) {
+        var j = i;
+        while (j < window.length() && window.charAt(j) == window.charAt(i)) { j += 1; }
+        if (j == window.length() && !complete) { break; }
+        next.append(j - i).append(window.charAt(i));
+        i = j;
+      }
+      complete = complete && next.length() <= WINDOW;
+      window = next.substring(0, Math.min(next.length(), WINDOW));
+    }
+    return true;
+  }
+}
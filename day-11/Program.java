@@ -93,12 +93,9 @@ public class Program {
   record Triple<T, U, V>(T fst, U snd, V trd) { }
 
   static <T, U> U foldLeft(Stream<T> stream, U seed, BiFunction<U, ? super T, U> accumulator) {
-    var acc = seed;
-    var iterator = stream.iterator();
-    while(iterator.hasNext()) {
-      acc = accumulator.apply(acc, iterator.next());
-    }
-    return acc;
+    var fold = new Object() { U acc = seed; };
+    stream.forEachOrdered(t -> fold.acc = accumulator.apply(fold.acc, t));
+    return fold.acc;
   }
 
   static <T, U> Iterable<Tuple<T, U>> zip(Iterable<T> left, Iterable<U> right) {